@@ -0,0 +1,183 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2017, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.cloudbus.cloudsim.Consts;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.sdn.physicalcomponents.SDNHost;
+import org.cloudbus.cloudsim.sdn.virtualcomponents.SDNVm;
+import org.cloudbus.cloudsim.sdn.workload.Processing;
+import org.cloudbus.cloudsim.sdn.workload.Request;
+
+/**
+ * Fluid (processor sharing) queue of the processing activities of a VM, computed without Cloudlets
+ * (Configuration.ANALYTIC_COMPUTE). Every job gets the same MIPS, taken from the MIPS currently allocated to the VM
+ * and capped as in CloudletSchedulerTimeSharedMonitor, so the queue keeps a virtual clock of MIs processed per job
+ * and a heap of the finish tags. The share is re-read whenever the queue is updated.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class AnalyticComputeQueue {
+	private final Vm vm;
+	private PriorityQueue<Job> jobs = new PriorityQueue<Job>();
+	private double virtualTime = 0;
+	private double lastUpdateTime;
+	private double rate = 0;	// MIPS per job since lastUpdateTime
+	private double scheduledTime = -1;
+
+	public static class Job implements Comparable<Job> {
+		private final Processing proc;
+		private final Request req;
+		private final double finishTag;
+
+		Job(Processing proc, Request req, double finishTag) {
+			this.proc = proc;
+			this.req = req;
+			this.finishTag = finishTag;
+		}
+
+		public Processing getProcessing() {
+			return proc;
+		}
+
+		public Request getRequest() {
+			return req;
+		}
+
+		@Override
+		public int compareTo(Job o) {
+			return Double.compare(finishTag, o.finishTag);
+		}
+	}
+
+	public AnalyticComputeQueue(Vm vm, double currentTime) {
+		this.vm = vm;
+		this.lastUpdateTime = currentTime;
+	}
+
+	public Vm getVm() {
+		return vm;
+	}
+
+	public void add(Processing proc, Request req, long length, double currentTime) {
+		advance(currentTime);
+		jobs.add(new Job(proc, req, virtualTime + length));
+		rate = getRate();
+	}
+
+	/**
+	 * Advances the queue to the given time.
+	 * @return the jobs completed by then, in the order of completion
+	 */
+	public List<Job> update(double currentTime) {
+		advance(currentTime);
+
+		List<Job> finished = Collections.emptyList();
+		// Less than 1 MI remaining is regarded as completed, as in CloudletSchedulerTimeShared
+		while(!jobs.isEmpty() && jobs.peek().finishTag - virtualTime < 1) {
+			if(finished.isEmpty())
+				finished = new ArrayList<Job>();
+			finished.add(jobs.poll());
+		}
+		rate = getRate();
+		return finished;
+	}
+
+	/**
+	 * Advances the queue to the given time and re-reads the share of the VM. Completed jobs are taken by the next
+	 * {@link #update(double)}.
+	 */
+	public void updateRate(double currentTime) {
+		advance(currentTime);
+		rate = getRate();
+	}
+
+	/**
+	 * @return the completion time of the next job with the current share, or Double.MAX_VALUE if none
+	 */
+	public double getNextFinishTime(double currentTime) {
+		if(jobs.isEmpty() || rate <= 0)
+			return Double.MAX_VALUE;
+
+		double delay = (jobs.peek().finishTag - virtualTime) / rate;
+		if(delay < CloudSim.getMinTimeBetweenEvents())
+			delay = CloudSim.getMinTimeBetweenEvents();
+		return currentTime + delay;
+	}
+
+	public double getScheduledTime() {
+		return scheduledTime;
+	}
+
+	public void setScheduledTime(double time) {
+		scheduledTime = time;
+	}
+
+	public int size() {
+		return jobs.size();
+	}
+
+	public boolean isEmpty() {
+		return jobs.isEmpty();
+	}
+
+	private void advance(double currentTime) {
+		double timeSpent = currentTime - lastUpdateTime;
+		if(timeSpent <= 0)
+			return;
+
+		if(!jobs.isEmpty() && rate > 0) {
+			virtualTime += rate * timeSpent;
+
+			// Processed MIs are reported to the monitors as the cloudlet schedulers do
+			long processedMIs = (long) (rate * timeSpent * jobs.size() * Consts.MILLION);
+			if(vm instanceof SDNVm)
+				((SDNVm) vm).increaseProcessedMIs(processedMIs, 0);
+			if(vm.getHost() instanceof SDNHost)
+				((SDNHost) vm.getHost()).increaseProcessedMIs(processedMIs);
+		}
+		lastUpdateTime = currentTime;
+	}
+
+	private double getRate() {
+		if(jobs.isEmpty() || vm.getHost() == null)
+			return 0;
+
+		List<Double> mipsShare = vm.getHost().getVmScheduler().getAllocatedMipsForVm(vm);
+		if(mipsShare == null)
+			return 0;
+
+		double capacity = 0.0;
+		int cpus = 0;
+		for(Double mips:mipsShare) {
+			capacity += mips;
+			if(mips > 0.0)
+				cpus++;
+		}
+		if(cpus == 0)
+			return 0;
+
+		// Each job uses one PE
+		if(jobs.size() > cpus)
+			capacity /= jobs.size();
+		else
+			capacity /= cpus;
+
+		double maxPeCapacityPerJob = vm.getMips() * Configuration.CPU_REQUIRED_MIPS_PER_WORKLOAD_PERCENT;
+		if(capacity > maxPeCapacityPerJob)
+			capacity = maxPeCapacityPerJob;
+		return capacity;
+	}
+}
@@ -8,14 +8,81 @@
  
 package org.cloudbus.cloudsim.sdn;
 
+import java.util.Calendar;
 import java.util.Iterator;
 
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.DeferredQueue;
+import org.cloudbus.cloudsim.core.FutureQueue;
 import org.cloudbus.cloudsim.core.SimEvent;
 
 public class CloudSimEx extends CloudSim {
 	private static long startTime;
 	
+	// Per-tag counters of the installed queues (null if the default queues are used)
+	private static EventTagIndex eventTagIndex = null;
+	private static FutureQueue indexedFuture = null;
+	
+	/**
+	 * Implementations of the future event list. Both deliver events in the same order.
+	 */
+	public enum FutureQueueType {
+		SORTED_SET,	// CloudSim's default FutureQueue
+		LADDER,		// LadderFutureQueue: amortized O(1) for large event lists
+	}
+	
+	/**
+	 * Initializes CloudSim and replaces its event queues with ones counting events per tag.
+	 * The future event list is chosen by Configuration.LADDER_FUTURE_QUEUE.
+	 */
+	public static void init(int numUser, Calendar cal, boolean traceFlag) {
+		init(numUser, cal, traceFlag, Configuration.LADDER_FUTURE_QUEUE ? FutureQueueType.LADDER : FutureQueueType.SORTED_SET);
+	}
+	
+	/**
+	 * Initializes CloudSim with the given future event list.
+	 */
+	public static void init(int numUser, Calendar cal, boolean traceFlag, FutureQueueType futureQueueType) {
+		CloudSim.init(numUser, cal, traceFlag);
+		installEventTagIndex(createFutureQueue(futureQueueType));
+	}
+	
+	private static FutureQueue createFutureQueue(FutureQueueType type) {
+		switch(type) {
+		case LADDER:
+			return new LadderFutureQueue();
+		case SORTED_SET:
+		default:
+			return new FutureQueue();
+		}
+	}
+	
+	private static void installEventTagIndex(FutureQueue queue) {
+		EventTagIndex index = new EventTagIndex();
+		FutureQueue newFuture = index.newFutureQueue(queue);
+		DeferredQueue newDeferred = index.newDeferredQueue();
+		
+		// Move events already sent, keeping their order.
+		Iterator<SimEvent> it = future.iterator();
+		while(it.hasNext())
+			newFuture.addEvent(it.next());
+		it = deferred.iterator();
+		while(it.hasNext())
+			newDeferred.addEvent(it.next());
+		
+		future = newFuture;
+		deferred = newDeferred;
+		eventTagIndex = index;
+		indexedFuture = newFuture;
+	}
+	
+	private static EventTagIndex getEventTagIndex() {
+		// The index is valid only while the queues installed with it are in use (CloudSim.init() replaces them).
+		if(eventTagIndex != null && future == indexedFuture)
+			return eventTagIndex;
+		return null;
+	}
+	
 	private static void setStartTimeMillis(long startedTime) {
 		startTime=startedTime;
 	}
@@ -43,11 +110,15 @@ public class CloudSimEx extends CloudSim {
 	}
 	
 	public static boolean hasMoreEvent(int excludeEventTag) {
+		EventTagIndex index = getEventTagIndex();
+		if(index != null)
+			return index.getTotal() - index.getCount(excludeEventTag) > 0;
+		
 		if(future.size() > 0) {
 			Iterator<SimEvent> fit = future.iterator();
 			while(fit.hasNext()) {
 				SimEvent ev = fit.next();
-				if(ev.getTag() != excludeEventTag)
+				if(ev.getTag() != excludeEventTag && !EventToken.isCancelled(ev))
 					return true;
 			}
 		}
@@ -55,19 +126,44 @@ public class CloudSimEx extends CloudSim {
 			Iterator<SimEvent> fit = deferred.iterator();
 			while(fit.hasNext()) {
 				SimEvent ev = fit.next();
-				if(ev.getTag() != excludeEventTag)
+				if(ev.getTag() != excludeEventTag && !EventToken.isCancelled(ev))
 					return true;
 			}
 		}
 		return false;
 	}
 	
+	/**
+	 * @return number of pending events with the tag, not counting events cancelled lazily.
+	 */
+	public static int getNumPendingEvents(int tag) {
+		EventTagIndex index = getEventTagIndex();
+		if(index != null)
+			return index.getCount(tag);
+		
+		int num = 0;
+		for(Iterator<SimEvent> it = future.iterator(); it.hasNext();) {
+			SimEvent ev = it.next();
+			if(ev.getTag() == tag && !EventToken.isCancelled(ev))
+				num++;
+		}
+		for(Iterator<SimEvent> it = deferred.iterator(); it.hasNext();) {
+			SimEvent ev = it.next();
+			if(ev.getTag() == tag && !EventToken.isCancelled(ev))
+				num++;
+		}
+		return num;
+	}
+	
 	public static double getNextEventTime() {
 		if(future.size() > 0) {
+			// Skip the events cancelled lazily
 			Iterator<SimEvent> fit = future.iterator();
-			SimEvent first = fit.next();
-			if(first != null)
-				return first.eventTime();
+			while(fit.hasNext()) {
+				SimEvent ev = fit.next();
+				if(ev != null && !EventToken.isCancelled(ev))
+					return ev.eventTime();
+			}
 		}
 		return -1;
 	}
@@ -27,6 +27,10 @@ public class CloudSimTagsSDN {
 	public static final int SDN_VM_CREATE_DYNAMIC = SDN_BASE + 6;
 	public static final int SDN_VM_CREATE_DYNAMIC_ACK = SDN_BASE + 7;
 	public static final int SDN_INTERNAL_CHANNEL_PROCESS = SDN_BASE + 8;
+	public static final int SDN_VM_CREATE_BULK = SDN_BASE + 30;	// NOS -> Datacenter: create all VMs in the list
+	public static final int SDN_VM_CREATE_BULK_ACK = SDN_BASE + 31;	// Datacenter -> NOS: the list of VMs processed
+	public static final int SDN_PACKET_COMPLETE_BATCH = SDN_BASE + 32;	// NOS -> Datacenter: Packet[] completed at the same time
+	public static final int SDN_ANALYTIC_PROCESSING_COMPLETE = SDN_BASE + 33;	// Next completion in a VM's analytic compute queue
 
 	public static final int REQUEST_SUBMIT = SDN_BASE + 10;
 	public static final int REQUEST_COMPLETED = SDN_BASE + 11;
@@ -0,0 +1,51 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2017, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.cloudbus.cloudsim.CloudletScheduler;
+
+/**
+ * Cloudlet schedulers of a datacenter which have finished or failed cloudlets to be collected.
+ * Schedulers add themselves when a cloudlet finishes or fails, so the datacenter visits only those
+ * instead of every VM. A scheduler is queued once until it is polled.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class CloudletCompletionQueue {
+	private ArrayDeque<CloudletScheduler> schedulers = new ArrayDeque<CloudletScheduler>();
+	private Set<CloudletScheduler> queued = Collections.newSetFromMap(new IdentityHashMap<CloudletScheduler, Boolean>());
+
+	public void add(CloudletScheduler scheduler) {
+		if(queued.add(scheduler))
+			schedulers.add(scheduler);
+	}
+
+	/**
+	 * @return the scheduler queued first, or null if empty
+	 */
+	public CloudletScheduler poll() {
+		CloudletScheduler scheduler = schedulers.poll();
+		if(scheduler != null)
+			queued.remove(scheduler);
+		return scheduler;
+	}
+
+	public boolean isEmpty() {
+		return schedulers.isEmpty();
+	}
+
+	public int size() {
+		return schedulers.size();
+	}
+}
@@ -19,4 +19,21 @@ public interface CloudletSchedulerMonitor {
 	
 	public int getCloudletTotalPesRequested();
 	public List<Cloudlet> getFailedCloudlet();
+	
+	/**
+	 * @return time limit of a cloudlet since its submission (infinite if no timeout).
+	 */
+	public double getTimeOut();
+	
+	/**
+	 * Fails the given cloudlets if they are still waiting or running, e.g. when their deadlines are passed.
+	 * Failed cloudlets are returned by {@link #getFailedCloudlet()}.
+	 */
+	public void timeOutCloudlets(List<Cloudlet> cloudlets);
+	
+	/**
+	 * Sets the queue of the datacenter running the cloudlets. The scheduler adds itself to the queue
+	 * when a cloudlet finishes or fails.
+	 */
+	public void setCompletionQueue(CloudletCompletionQueue queue);
 }
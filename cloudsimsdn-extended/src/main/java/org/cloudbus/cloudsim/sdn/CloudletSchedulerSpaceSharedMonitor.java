@@ -9,7 +9,9 @@
 package org.cloudbus.cloudsim.sdn;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.cloudbus.cloudsim.Cloudlet;
 import org.cloudbus.cloudsim.CloudletSchedulerSpaceShared;
@@ -20,19 +22,13 @@ public class CloudletSchedulerSpaceSharedMonitor extends CloudletSchedulerSpaceS
 	// For monitoring
 	private double prevMonitoredTime = 0;
 	private double timeoutLimit = Double.POSITIVE_INFINITY;
+	private CloudletCompletionQueue completionQueue = null;
 	
 	public CloudletSchedulerSpaceSharedMonitor(double timeOut) {
 		super();
 		this.timeoutLimit = timeOut;
 	}
 	
-	@Override
-	public double updateVmProcessing(double currentTime, List<Double> mipsShare) {
-		double ret = super.updateVmProcessing(currentTime, mipsShare);
-		processTimeout(currentTime);
-		return ret;
-	}
-	
 	@Override
 	public List<Cloudlet> getFailedCloudlet() {
 		List<Cloudlet> failed = new ArrayList<Cloudlet>();
@@ -43,37 +39,56 @@ public class CloudletSchedulerSpaceSharedMonitor extends CloudletSchedulerSpaceS
 		return failed;
 	}
 
-	protected void processTimeout(double currentTime) {
-		// Check if any cloudlet is timed out.
-		if(timeoutLimit > 0 && Double.isFinite(timeoutLimit)) {
-			double timeout = currentTime - this.timeoutLimit;
-			{
-				List<ResCloudlet> timeoutCloudlet = new ArrayList<ResCloudlet>();
-				for (ResCloudlet rcl : getCloudletExecList()) {
-					if(rcl.getCloudletArrivalTime() < timeout) {
-						rcl.setCloudletStatus(Cloudlet.FAILED);
-						rcl.finalizeCloudlet();
-						timeoutCloudlet.add(rcl);
-						usedPes -= rcl.getNumberOfPes();					
-					}
+	@Override
+	public double getTimeOut() {
+		return timeoutLimit;
+	}
+
+	@Override
+	public void setCompletionQueue(CloudletCompletionQueue queue) {
+		this.completionQueue = queue;
+	}
+	
+	@Override
+	public void cloudletFinish(ResCloudlet rcl) {
+		super.cloudletFinish(rcl);
+		if(completionQueue != null)
+			completionQueue.add(this);
+	}
+	
+	@Override
+	public void timeOutCloudlets(List<Cloudlet> cloudlets) {
+		// Deadlines are tracked by the datacenter (SDNDatacenter), so only the expired cloudlets are given.
+		Set<Integer> timeoutIds = new HashSet<Integer>();
+		for(Cloudlet cl:cloudlets)
+			timeoutIds.add(cl.getCloudletId());
+		{
+			List<ResCloudlet> timeoutCloudlet = new ArrayList<ResCloudlet>();
+			for (ResCloudlet rcl : getCloudletExecList()) {
+				if(timeoutIds.contains(rcl.getCloudletId())) {
+					rcl.setCloudletStatus(Cloudlet.FAILED);
+					rcl.finalizeCloudlet();
+					timeoutCloudlet.add(rcl);
+					usedPes -= rcl.getNumberOfPes();
 				}
-				getCloudletExecList().removeAll(timeoutCloudlet);
-				getCloudletFailedList().addAll(timeoutCloudlet);
 			}
-			{			
-				List<ResCloudlet> timeoutCloudlet = new ArrayList<ResCloudlet>();
-				for (ResCloudlet rcl : getCloudletWaitingList()) {
-					if(rcl.getCloudletArrivalTime() < timeout) {
-						rcl.setCloudletStatus(Cloudlet.FAILED);
-						rcl.finalizeCloudlet();
-						timeoutCloudlet.add(rcl);
-					}
+			getCloudletExecList().removeAll(timeoutCloudlet);
+			getCloudletFailedList().addAll(timeoutCloudlet);
+		}
+		{
+			List<ResCloudlet> timeoutCloudlet = new ArrayList<ResCloudlet>();
+			for (ResCloudlet rcl : getCloudletWaitingList()) {
+				if(timeoutIds.contains(rcl.getCloudletId())) {
+					rcl.setCloudletStatus(Cloudlet.FAILED);
+					rcl.finalizeCloudlet();
+					timeoutCloudlet.add(rcl);
 				}
-				getCloudletWaitingList().removeAll(timeoutCloudlet);
-				getCloudletFailedList().addAll(timeoutCloudlet);
 			}
-			
+			getCloudletWaitingList().removeAll(timeoutCloudlet);
+			getCloudletFailedList().addAll(timeoutCloudlet);
 		}
+		if(completionQueue != null && !getCloudletFailedList().isEmpty())
+			completionQueue.add(this);
 	}
 
 	@Override
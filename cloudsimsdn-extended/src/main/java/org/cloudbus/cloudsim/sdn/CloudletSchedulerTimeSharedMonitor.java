@@ -9,7 +9,9 @@
 package org.cloudbus.cloudsim.sdn;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.cloudbus.cloudsim.Cloudlet;
 import org.cloudbus.cloudsim.CloudletSchedulerTimeShared;
@@ -21,6 +23,7 @@ public class CloudletSchedulerTimeSharedMonitor extends CloudletSchedulerTimeSha
 	// For monitoring
 	private double prevMonitoredTime = 0;
 	private double vmMips = 0;
+	private CloudletCompletionQueue completionQueue = null;
 	
 	
 	public CloudletSchedulerTimeSharedMonitor(long vmMipsPerPE, double timeout) {
@@ -74,13 +77,6 @@ public class CloudletSchedulerTimeSharedMonitor extends CloudletSchedulerTimeSha
 		return pesInUse;
 	}
 
-	@Override
-	public double updateVmProcessing(double currentTime, List<Double> mipsShare) {
-		double ret = super.updateVmProcessing(currentTime, mipsShare);
-		processTimeout(currentTime);
-		return ret;
-	}
-	
 	@Override
 	public List<Cloudlet> getFailedCloudlet() {
 		List<Cloudlet> failed = new ArrayList<Cloudlet>();
@@ -91,20 +87,41 @@ public class CloudletSchedulerTimeSharedMonitor extends CloudletSchedulerTimeSha
 		return failed;
 	}
 
-	protected void processTimeout(double currentTime) {
-		// Check if any cloudlet is timed out.
-		if(timeoutLimit > 0 && Double.isFinite(timeoutLimit)) {
-			double timeout = currentTime - this.timeoutLimit;
-			List<ResCloudlet> timeoutCloudlet = new ArrayList<ResCloudlet>();
-			
-			for (ResCloudlet rcl : getCloudletExecList()) {
-				if(rcl.getCloudletArrivalTime() < timeout) {
-					timeoutCloudlet.add(rcl);
-				}
+	@Override
+	public double getTimeOut() {
+		return timeoutLimit;
+	}
+
+	@Override
+	public void setCompletionQueue(CloudletCompletionQueue queue) {
+		this.completionQueue = queue;
+	}
+	
+	@Override
+	public void cloudletFinish(ResCloudlet rcl) {
+		super.cloudletFinish(rcl);
+		if(completionQueue != null)
+			completionQueue.add(this);
+	}
+	
+	@Override
+	public void timeOutCloudlets(List<Cloudlet> cloudlets) {
+		// Deadlines are tracked by the datacenter (SDNDatacenter), so only the expired cloudlets are given.
+		Set<Integer> timeoutIds = new HashSet<Integer>();
+		for(Cloudlet cl:cloudlets)
+			timeoutIds.add(cl.getCloudletId());
+		
+		List<ResCloudlet> timeoutCloudlet = new ArrayList<ResCloudlet>();
+		for (ResCloudlet rcl : getCloudletExecList()) {
+			if(timeoutIds.contains(rcl.getCloudletId())) {
+				rcl.setCloudletStatus(Cloudlet.FAILED);
+				rcl.finalizeCloudlet();
+				timeoutCloudlet.add(rcl);
 			}
-			getCloudletFailedList().addAll(timeoutCloudlet);
-			getCloudletExecList().removeAll(timeoutCloudlet);			
 		}
-		
+		getCloudletExecList().removeAll(timeoutCloudlet);
+		getCloudletFailedList().addAll(timeoutCloudlet);
+		if(completionQueue != null && !getCloudletFailedList().isEmpty())
+			completionQueue.add(this);
 	}	
 }
@@ -0,0 +1,452 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2017, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.CloudletSchedulerTimeShared;
+import org.cloudbus.cloudsim.Consts;
+import org.cloudbus.cloudsim.ResCloudlet;
+import org.cloudbus.cloudsim.core.CloudSim;
+
+/**
+ * Time shared (processor sharing) cloudlet scheduler based on virtual time, for VMs with many cloudlets in flight.
+ * All running cloudlets get the same MIPS per PE, so the VM keeps a virtual clock counting the MIs processed per PE so far.
+ * Every cloudlet gets a finish tag (virtual clock at which it completes) and is kept in a heap by the tag.
+ * Updating the VM only advances the virtual clock and pops the completed tags,
+ * so submit, complete and next finish time are O(log n) instead of visiting every cloudlet.
+ *
+ * Gives the same result as {@link CloudletSchedulerTimeSharedMonitor}. The progress of a running cloudlet
+ * is written to its ResCloudlet only when it leaves the scheduler or {@link #getCloudletExecList()} is called.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class CloudletSchedulerVirtualTimeMonitor extends CloudletSchedulerTimeShared implements CloudletSchedulerMonitor {
+	private double timeoutLimit = Double.POSITIVE_INFINITY;
+	// For monitoring
+	private double prevMonitoredTime = 0;
+	private double vmMips = 0;
+	private CloudletCompletionQueue completionQueue = null;
+
+	private double virtualTime = 0;	// MIs processed per PE of a running cloudlet so far
+	private int pesInUse = 0;
+	private long nextSequence = 0;
+
+	private Map<Integer, Entry> running = new LinkedHashMap<Integer, Entry>();	// Cloudlet ID -> Entry, in submission order
+	private EntryHeap byFinishTag = new EntryHeap();
+
+	// Returned by getCloudletExecList(), rebuilt only when cloudlets are added or removed
+	private List<ResCloudlet> execList = null;
+	private double execListVirtualTime = -1;	// Virtual clock of the progress written by getCloudletExecList()
+
+	public CloudletSchedulerVirtualTimeMonitor(long vmMipsPerPE, double timeout) {
+		vmMips = vmMipsPerPE;
+		timeoutLimit = timeout;
+	}
+
+	@Override
+	public double updateVmProcessing(double currentTime, List<Double> mipsShare) {
+		setCurrentMipsShare(mipsShare);
+		if(running.isEmpty()) {
+			setPreviousTime(currentTime);
+			return 0.0;
+		}
+
+		double timeSpent = currentTime - getPreviousTime();
+		virtualTime += getCapacity(mipsShare) * timeSpent;
+
+		// Less than 1 MI remaining is regarded as completed, as in CloudletSchedulerTimeShared
+		while(!byFinishTag.isEmpty() && (byFinishTag.peek().finishTag - virtualTime) * byFinishTag.peek().pes < 1) {
+			Entry e = byFinishTag.peek();
+			remove(e);
+			e.rcl.updateCloudletFinishedSoFar(e.rcl.getCloudletTotalLength() * Consts.MILLION - e.reported);
+			cloudletFinish(e.rcl);
+		}
+		setPreviousTime(currentTime);
+
+		if(byFinishTag.isEmpty())
+			return Double.MAX_VALUE;
+
+		double capacity = getCapacity(mipsShare);
+		if(capacity <= 0)
+			return Double.MAX_VALUE;
+
+		double nextEvent = currentTime + (byFinishTag.peek().finishTag - virtualTime) / capacity;
+		if(nextEvent - currentTime < CloudSim.getMinTimeBetweenEvents())
+			nextEvent = currentTime + CloudSim.getMinTimeBetweenEvents();
+		return nextEvent;
+	}
+
+	@Override
+	public double cloudletSubmit(Cloudlet cloudlet, double fileTransferTime) {
+		ResCloudlet rcl = new ResCloudlet(cloudlet);
+		rcl.setCloudletStatus(Cloudlet.INEXEC);
+		for(int i = 0; i < cloudlet.getNumberOfPes(); i++)
+			rcl.setMachineAndPeId(0, i);
+		add(rcl, 0);
+
+		// use the current capacity to estimate the extra amount of time to file transferring.
+		double capacity = getCapacity(getCurrentMipsShare());
+		double extraSize = capacity * fileTransferTime;
+		long length = (long) (cloudlet.getCloudletLength() + extraSize);
+		cloudlet.setCloudletLength(length);
+		Entry e = running.get(cloudlet.getCloudletId());
+		e.setLength(length);
+		byFinishTag.update(e);
+
+		return cloudlet.getCloudletLength() / capacity;
+	}
+
+	@Override
+	public double cloudletSubmit(Cloudlet cloudlet) {
+		return cloudletSubmit(cloudlet, 0);
+	}
+
+	// Adds a running cloudlet which has already processed the given MIs per PE
+	private void add(ResCloudlet rcl, double processedPerPe) {
+		if(running.isEmpty())
+			virtualTime = 0;	// Rebase the virtual clock while the VM is idle, to keep its precision.
+
+		Entry e = new Entry(rcl, nextSequence++);
+		e.startTag = virtualTime - processedPerPe;
+		e.reported = rcl.getCloudletFinishedSoFar();
+		e.setLength(rcl.getCloudletLength());
+		running.put(rcl.getCloudletId(), e);
+		byFinishTag.add(e);
+		pesInUse += e.pes;
+		execList = null;
+	}
+
+	private void remove(Entry e) {
+		updateFinishedSoFar(e);
+		running.remove(e.rcl.getCloudletId());
+		byFinishTag.remove(e);
+		pesInUse -= e.pes;
+		execList = null;
+	}
+
+	// Writes the progress of the running cloudlet to its ResCloudlet
+	private void updateFinishedSoFar(Entry e) {
+		long total = e.rcl.getCloudletTotalLength() * Consts.MILLION;
+		long processed = Math.min(total, Math.round((virtualTime - e.startTag) * e.pes * Consts.MILLION));
+		if(processed > e.reported) {
+			e.rcl.updateCloudletFinishedSoFar(processed - e.reported);
+			e.reported = processed;
+		}
+	}
+
+	@Override
+	public void cloudletFinish(ResCloudlet rcl) {
+		super.cloudletFinish(rcl);
+		if(completionQueue != null)
+			completionQueue.add(this);
+	}
+
+	@Override
+	public Cloudlet cloudletCancel(int cloudletId) {
+		Entry e = running.get(cloudletId);
+		if(e == null)
+			return super.cloudletCancel(cloudletId);	// Finished or paused ones
+
+		remove(e);
+		if(e.rcl.getRemainingCloudletLength() == 0)
+			cloudletFinish(e.rcl);
+		else
+			e.rcl.setCloudletStatus(Cloudlet.CANCELED);
+		return e.rcl.getCloudlet();
+	}
+
+	@Override
+	public boolean cloudletPause(int cloudletId) {
+		Entry e = running.get(cloudletId);
+		if(e == null)
+			return super.cloudletPause(cloudletId);
+
+		remove(e);
+		if(e.rcl.getRemainingCloudletLength() == 0) {
+			cloudletFinish(e.rcl);
+		}
+		else {
+			e.rcl.setCloudletStatus(Cloudlet.PAUSED);
+			getCloudletPausedList().add(e.rcl);
+		}
+		return true;
+	}
+
+	@Override
+	public double cloudletResume(int cloudletId) {
+		Iterator<ResCloudlet> it = getCloudletPausedList().iterator();
+		while(it.hasNext()) {
+			ResCloudlet rcl = it.next();
+			if(rcl.getCloudletId() == cloudletId) {
+				it.remove();
+				rcl.setCloudletStatus(Cloudlet.INEXEC);
+				add(rcl, (double) rcl.getCloudletFinishedSoFar() / Consts.MILLION / Math.max(1, rcl.getNumberOfPes()));
+
+				double remainingLength = rcl.getRemainingCloudletLength();
+				return CloudSim.clock() + (remainingLength / (getCapacity(getCurrentMipsShare()) * rcl.getNumberOfPes()));
+			}
+		}
+		return 0.0;
+	}
+
+	@Override
+	public int getCloudletStatus(int cloudletId) {
+		Entry e = running.get(cloudletId);
+		if(e != null)
+			return e.rcl.getCloudletStatus();
+		return super.getCloudletStatus(cloudletId);
+	}
+
+	@Override
+	public int runningCloudlets() {
+		return running.size();
+	}
+
+	@Override
+	public Cloudlet migrateCloudlet() {
+		if(running.isEmpty())
+			return null;
+		Entry e = running.values().iterator().next();
+		remove(e);
+		e.rcl.finalizeCloudlet();
+		return e.rcl.getCloudlet();
+	}
+
+	@Override
+	public double getTotalUtilizationOfCpu(double time) {
+		double totalUtilization = 0;
+		for(Entry e:running.values())
+			totalUtilization += e.rcl.getCloudlet().getUtilizationOfCpu(time);
+		return totalUtilization;
+	}
+
+	/**
+	 * Running cloudlets with their progress up to the last update. The list is read-only and is not kept in sync:
+	 * call again after the scheduler is changed.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T extends ResCloudlet> List<T> getCloudletExecList() {
+		if(execList == null) {
+			List<ResCloudlet> list = new ArrayList<ResCloudlet>(running.size());
+			for(Entry e:running.values())
+				list.add(e.rcl);
+			execList = Collections.unmodifiableList(list);
+			execListVirtualTime = -1;
+		}
+		if(execListVirtualTime != virtualTime) {
+			for(Entry e:running.values())
+				updateFinishedSoFar(e);
+			execListVirtualTime = virtualTime;
+		}
+		return (List<T>) execList;
+	}
+
+	@Override
+	public double getCapacity(List<Double> mipsShare) {
+		double capacity = 0.0;
+		int cpus = 0;
+		for(Double mips:mipsShare) {
+			capacity += mips;
+			if(mips > 0.0)
+				cpus++;
+		}
+		if(cpus == 0)
+			return 0;
+
+		if(pesInUse > cpus)
+			capacity /= pesInUse;
+		else
+			capacity /= cpus;
+
+		double maxPeCapacityPerCloudlet = vmMips * Configuration.CPU_REQUIRED_MIPS_PER_WORKLOAD_PERCENT;
+		if(capacity > maxPeCapacityPerCloudlet)
+			capacity = maxPeCapacityPerCloudlet;
+		return capacity;
+	}
+
+	@Override
+	public long getTotalProcessingPreviousTime(double currentTime, List<Double> mipsShare) {
+		double timeSpent = currentTime - prevMonitoredTime;
+		double capacity = getCapacity(mipsShare);
+		long totalProcessedMIs = (long) (capacity * timeSpent * pesInUse * Consts.MILLION);
+
+		prevMonitoredTime = currentTime;
+		return totalProcessedMIs;
+	}
+
+	@Override
+	public double getTimeSpentPreviousMonitoredTime(double currentTime) {
+		double timeSpent = currentTime - prevMonitoredTime;
+		return timeSpent;
+	}
+
+	@Override
+	public boolean isVmIdle() {
+		return running.isEmpty();
+	}
+
+	@Override
+	public int getCloudletTotalPesRequested() {
+		return pesInUse;
+	}
+
+	@Override
+	public List<Cloudlet> getFailedCloudlet() {
+		List<Cloudlet> failed = new ArrayList<Cloudlet>();
+		for(ResCloudlet cl:getCloudletFailedList()) {
+			failed.add(cl.getCloudlet());
+		}
+		getCloudletFailedList().clear();
+		return failed;
+	}
+
+	@Override
+	public double getTimeOut() {
+		return timeoutLimit;
+	}
+
+	@Override
+	public void setCompletionQueue(CloudletCompletionQueue queue) {
+		this.completionQueue = queue;
+	}
+
+	@Override
+	public void timeOutCloudlets(List<Cloudlet> cloudlets) {
+		// Deadlines are tracked by the datacenter (SDNDatacenter), so only the expired cloudlets are given.
+		for(Cloudlet cl:cloudlets) {
+			Entry e = running.get(cl.getCloudletId());
+			if(e == null)
+				continue;
+			remove(e);
+			e.rcl.setCloudletStatus(Cloudlet.FAILED);
+			e.rcl.finalizeCloudlet();
+			getCloudletFailedList().add(e.rcl);
+		}
+		if(completionQueue != null && !getCloudletFailedList().isEmpty())
+			completionQueue.add(this);
+	}
+
+	private static class Entry {
+		final ResCloudlet rcl;
+		final int pes;
+		final long sequence;	// Breaks ties in submission order
+		double startTag;	// Virtual clock when the cloudlet would have started with its current progress
+		double finishTag;
+		long reported;	// Instructions written to the ResCloudlet
+		int heapIndex = -1;
+
+		Entry(ResCloudlet rcl, long sequence) {
+			this.rcl = rcl;
+			this.pes = Math.max(1, rcl.getNumberOfPes());
+			this.sequence = sequence;
+		}
+
+		// Length per PE in MI (Cloudlet.getCloudletLength)
+		void setLength(long length) {
+			finishTag = startTag + length;
+		}
+	}
+
+	/**
+	 * Indexed binary min-heap of entries ordered by finish tag.
+	 */
+	private static class EntryHeap {
+		private Entry[] heap = new Entry[16];
+		private int size = 0;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		Entry peek() {
+			return heap[0];
+		}
+
+		void add(Entry e) {
+			if(size == heap.length)
+				heap = Arrays.copyOf(heap, size * 2);
+			heap[size] = e;
+			e.heapIndex = size;
+			size++;
+			siftUp(size-1);
+		}
+
+		// Re-sorts the entry after its finish tag is changed
+		void update(Entry e) {
+			siftDown(e.heapIndex);
+			siftUp(e.heapIndex);
+		}
+
+		void remove(Entry e) {
+			int i = e.heapIndex;
+			if(i < 0 || i >= size || heap[i] != e)
+				return;
+
+			int last = size - 1;
+			if(i != last) {
+				heap[i] = heap[last];
+				heap[i].heapIndex = i;
+			}
+			heap[last] = null;
+			size--;
+			e.heapIndex = -1;
+			if(i < size) {
+				siftDown(i);
+				siftUp(i);
+			}
+		}
+
+		private boolean less(Entry a, Entry b) {
+			if(a.finishTag != b.finishTag)
+				return a.finishTag < b.finishTag;
+			return a.sequence < b.sequence;
+		}
+
+		private void siftUp(int i) {
+			Entry e = heap[i];
+			while(i > 0) {
+				int parent = (i - 1) >>> 1;
+				if(!less(e, heap[parent]))
+					break;
+				heap[i] = heap[parent];
+				heap[i].heapIndex = i;
+				i = parent;
+			}
+			heap[i] = e;
+			e.heapIndex = i;
+		}
+
+		private void siftDown(int i) {
+			Entry e = heap[i];
+			while(true) {
+				int child = 2 * i + 1;
+				if(child >= size)
+					break;
+				if(child + 1 < size && less(heap[child+1], heap[child]))
+					child++;
+				if(!less(heap[child], e))
+					break;
+				heap[i] = heap[child];
+				heap[i].heapIndex = i;
+				i = child;
+			}
+			heap[i] = e;
+			e.heapIndex = i;
+		}
+	}
+}
@@ -150,6 +150,65 @@ public class Configuration {
   // public static final double TIME_OUT = 10; // Double.POSITIVE_INFINITY; //
   public static final double TIME_OUT = Double.POSITIVE_INFINITY;
 
+  // Share link bandwidth max-min fairly among channels, recomputing only the channels affected by a change.
+  // If false, each channel takes the bottleneck link's equal share (recomputed for all channels).
+  public static boolean MAX_MIN_FAIR_BANDWIDTH_ALLOCATION = false;
+
+  // Use virtual-time packet scheduler (heap of finish tags) in channels instead of visiting every transmission.
+  public static boolean PACKET_SCHEDULER_VIRTUAL_TIME = false;
+
+  // Use time shared cloudlet scheduler based on virtual time (heap of finish tags) in VMs, instead of the space shared one.
+  // This changes the results: cloudlets of a VM share its PEs at once (as in CloudletSchedulerTimeSharedMonitor)
+  // instead of waiting in a queue for a free PE.
+  public static boolean CLOUDLET_SCHEDULER_VIRTUAL_TIME = false;
+
+  // Build forwarding tables for all flows once every VM is created, instead of per VM as it is created.
+  // Flows cannot be used until the last VM is created.
+  public static boolean DEPLOY_FLOWS_AFTER_ALL_VMS_CREATED = false;
+
+  // Create VMs with the same start time in one event and one batch allocation, acknowledged once.
+  public static boolean CREATE_VMS_IN_BULK = false;
+
+  // Flows to the same destination VM share one forwarding rule per node; only flows on another hop keep their own.
+  // A flow without a rule then follows the rule of its destination.
+  public static boolean FORWARDING_RULES_AGGREGATE_BY_DESTINATION = false;
+
+  // Fat-tree switches route by the rack and pod of the destination host instead of one route per host.
+  public static boolean HIERARCHICAL_ROUTING = false;
+
+  // Directory of binary snapshots of the parsed topology JSON files, keyed by the hash of the full content. Null to
+  // always parse the JSON. This is a parse cache only: routing tables, path cache and placements are built every run.
+  public static String TOPOLOGY_SNAPSHOT_DIR = null;
+
+  // Packets completed together for the same datacenter and delivery time are delivered in one event.
+  // Only consecutive completions are grouped, so the packets are processed in the same order as with one event each.
+  public static boolean BATCH_PACKET_COMPLETE_EVENTS = true;
+
+  // Time quantization of channel completions (seconds). If > 0, the NOS processes channels at the end of each window
+  // of this length, so all completions in a window take one pass. Each completion is delayed by less than the window;
+  // the delays are reported when the simulation ends. 0 to process every completion at its own time.
+  public static double CHANNEL_COMPLETION_EPSILON = 0;
+
+  // Datacenters advance only the host a cloudlet is submitted to, and hosts whose next completion is due,
+  // instead of every host on each submission. All hosts are still advanced for monitoring and migration.
+  public static boolean LAZY_HOST_PROCESSING = false;
+
+  // CloudSimEx.init uses the ladder queue as the future event list, for long runs with many failure,
+  // checkpoint and packet events. If false, CloudSim's default FutureQueue is used.
+  public static boolean LADDER_FUTURE_QUEUE = false;
+
+  // Processing activities are computed in a fluid queue per VM from its allocated MIPS, without Cloudlets.
+  // Only the next completion of each VM is scheduled. Meant for network-focused experiments.
+  public static boolean ANALYTIC_COMPUTE = false;
+
+  // Enumerate the equal-cost paths between all host pairs once the routes are built (PathCache).
+  // If false, the paths of a host pair are enumerated on its first query. Memory grows with hosts^2 x paths per pair.
+  public static boolean PRECOMPUTE_HOST_PATHS = true;
+
+  // VmSchedulerTimeSharedOverSubscriptionDynamicVM keeps the total required MIPS and the scaling factor, and rewrites
+  // only the shares of changed VMs unless the scaling factor changes.
+  public static boolean INCREMENTAL_MIPS_REDISTRIBUTION = false;
+
   public static boolean ENABLE_SFC = true;
 
   public static boolean SFC_LATENCY_AWARE_ENABLE;
@@ -164,6 +223,7 @@ public class Configuration {
   public static boolean DEBUG_RESULT_WRITE_DETAIL = true;
   public static boolean DEBUG_PRINT_DETAIL_SIZE_TIME = true;
   public static boolean DEBUG_CHECK_OVER_TIME_REQUESTS = false;
+  public static boolean DEBUG_CHECK_LINK_AGGREGATES = false; // Verify Link's running bandwidth/channel counters on every update
 
   public static double CHECKPOINT_OVERHEAD = 20;
 
@@ -0,0 +1,199 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.core.DeferredQueue;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+/**
+ * Number of pending events per tag in CloudSim's future and deferred queues.
+ * The counters are kept up to date by the queue wrappers created here ({@link #newFutureQueue(FutureQueue)}, {@link #newDeferredQueue()}),
+ * which CloudSimEx installs in place of the default queues. Events cancelled lazily (see {@link EventToken}) are not counted.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class EventTagIndex {
+	private Map<Integer, int[]> counts = new HashMap<Integer, int[]>();
+	private int total = 0;
+
+	/**
+	 * @return number of pending (not cancelled) events with the tag.
+	 */
+	public int getCount(int tag) {
+		int[] c = counts.get(tag);
+		return c == null ? 0 : c[0];
+	}
+
+	/**
+	 * @return number of all pending (not cancelled) events.
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	private void add(int tag, int n) {
+		int[] c = counts.get(tag);
+		if(c == null) {
+			c = new int[1];
+			counts.put(tag, c);
+		}
+		c[0] += n;
+		total += n;
+	}
+
+	void added(SimEvent ev) {
+		Object data = ev.getData();
+		if(data instanceof EventToken) {
+			EventToken token = (EventToken) data;
+			token.queued(this, ev.getTag());
+			if(token.isCancelled())
+				return;
+		}
+		add(ev.getTag(), 1);
+	}
+
+	void removed(SimEvent ev) {
+		Object data = ev.getData();
+		if(data instanceof EventToken) {
+			EventToken token = (EventToken) data;
+			token.dequeued();
+			if(token.isCancelled())
+				return;
+		}
+		add(ev.getTag(), -1);
+	}
+
+	// An event in the queue(s) is cancelled lazily
+	void cancelled(int tag, int numQueued) {
+		add(tag, -numQueued);
+	}
+
+	/**
+	 * @param queue the future event list actually keeping the events
+	 */
+	public FutureQueue newFutureQueue(FutureQueue queue) {
+		return new TaggedFutureQueue(queue);
+	}
+
+	public DeferredQueue newDeferredQueue() {
+		return new TaggedDeferredQueue();
+	}
+
+	private Iterator<SimEvent> wrap(final Iterator<SimEvent> it) {
+		return new Iterator<SimEvent>() {
+			private SimEvent last = null;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public SimEvent next() {
+				last = it.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				it.remove();
+				removed(last);
+			}
+		};
+	}
+
+	private class TaggedFutureQueue extends FutureQueue {
+		private final FutureQueue queue;
+
+		TaggedFutureQueue(FutureQueue queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void addEvent(SimEvent newEvent) {
+			queue.addEvent(newEvent);
+			added(newEvent);
+		}
+
+		@Override
+		public void addEventFirst(SimEvent newEvent) {
+			queue.addEventFirst(newEvent);
+			added(newEvent);
+		}
+
+		@Override
+		public Iterator<SimEvent> iterator() {
+			return wrap(queue.iterator());
+		}
+
+		@Override
+		public int size() {
+			return queue.size();
+		}
+
+		@Override
+		public boolean remove(SimEvent event) {
+			boolean ret = queue.remove(event);
+			if(ret)
+				removed(event);
+			return ret;
+		}
+
+		@Override
+		public boolean removeAll(Collection<SimEvent> events) {
+			boolean ret = false;
+			for(SimEvent ev:events)
+				ret |= remove(ev);
+			return ret;
+		}
+
+		@Override
+		public void clear() {
+			Iterator<SimEvent> it = queue.iterator();
+			while(it.hasNext())
+				removed(it.next());
+			queue.clear();
+		}
+	}
+
+	private class TaggedDeferredQueue extends DeferredQueue {
+		@Override
+		public void addEvent(SimEvent newEvent) {
+			super.addEvent(newEvent);
+			added(newEvent);
+		}
+
+		@Override
+		public Iterator<SimEvent> iterator() {
+			return wrap(super.iterator());
+		}
+
+		@Override
+		public boolean remove(SimEvent event) {
+			boolean ret = super.remove(event);
+			if(ret)
+				removed(event);
+			return ret;
+		}
+
+		@Override
+		public void clear() {
+			Iterator<SimEvent> it = super.iterator();
+			while(it.hasNext())
+				removed(it.next());
+			super.clear();
+		}
+	}
+}
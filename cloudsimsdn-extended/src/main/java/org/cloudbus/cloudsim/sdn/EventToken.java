@@ -0,0 +1,67 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import org.cloudbus.cloudsim.core.SimEvent;
+
+/**
+ * Data of an event that can be cancelled lazily.
+ * Instead of removing the event from the future queue (which scans the whole queue),
+ * the sender cancels the token and ignores the event when it is delivered.
+ * The generation number tells which of the events sent by an entity is the latest.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class EventToken {
+	private final long generation;
+	private boolean cancelled = false;
+	
+	// Where the event is counted (see EventTagIndex)
+	private EventTagIndex index = null;
+	private int tag;
+	private int numQueued = 0;
+
+	public EventToken(long generation) {
+		this.generation = generation;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public void cancel() {
+		if(cancelled)
+			return;
+		cancelled = true;
+		if(index != null && numQueued > 0)
+			index.cancelled(tag, numQueued);
+	}
+	
+	void queued(EventTagIndex index, int tag) {
+		this.index = index;
+		this.tag = tag;
+		numQueued++;
+	}
+	
+	void dequeued() {
+		numQueued--;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return true if the event carries a cancelled token and will be ignored by the receiver.
+	 */
+	public static boolean isCancelled(SimEvent ev) {
+		Object data = ev.getData();
+		return (data instanceof EventToken) && ((EventToken) data).isCancelled();
+	}
+}
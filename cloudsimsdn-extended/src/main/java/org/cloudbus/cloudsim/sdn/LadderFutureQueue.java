@@ -0,0 +1,439 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+/**
+ * Future event list based on the ladder queue, with amortized O(1) enqueue and dequeue
+ * for the millions of events in long availability runs (the default {@link FutureQueue} is a sorted set).
+ *
+ * Events far in the future are appended to an unsorted Top list. When the near-term events run out,
+ * Top is spread over a Rung of buckets by time; crowded buckets are spread again over a finer rung,
+ * and small buckets are sorted into Bottom, from which events are taken in order.
+ * The order is the same as {@link FutureQueue}: by time, then by serial number
+ * (0 for {@link #addEventFirst(SimEvent)}), then by insertion.
+ *
+ * Removed events are marked and skipped; the entry of an event is found through an identity map, so removing any
+ * event is O(1). The iterator walks events in order, moving buckets to Bottom as it goes.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class LadderFutureQueue extends FutureQueue {
+	private static final int BUCKET_THRESHOLD = 50;	// Buckets larger than this are spread over a new rung
+	private static final int MAX_RUNGS = 8;
+	private static final int BOTTOM_THRESHOLD = 4096;	// Bottom larger than this is spread over a new rung on insert
+
+	private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry a, Entry b) {
+			int cmp = Double.compare(a.time, b.time);
+			if(cmp != 0)
+				return cmp;
+			cmp = Long.compare(a.serial, b.serial);
+			if(cmp != 0)
+				return cmp;
+			return Long.compare(a.order, b.order);
+		}
+	};
+
+	private long serial = 0;
+	private long nextOrder = 0;
+	private int size = 0;
+
+	// Top: unsorted events at or after topStart
+	private List<Entry> top = new ArrayList<Entry>();
+	private double topStart = Double.NEGATIVE_INFINITY;
+	private double topMin = Double.POSITIVE_INFINITY;
+	private double topMax = Double.NEGATIVE_INFINITY;
+
+	// Rungs: the last one covers the earliest times
+	private List<Rung> rungs = new ArrayList<Rung>();
+
+	// Bottom: sorted events before the current bucket of the last rung (or before topStart)
+	private List<Entry> bottom = new ArrayList<Entry>();
+	private int bottomHead = 0;
+	private int bottomSpreadLimit = BOTTOM_THRESHOLD;
+
+	// Event -> its entry, for remove(SimEvent)
+	private IdentityHashMap<SimEvent, Entry> entryIndex = new IdentityHashMap<SimEvent, Entry>();
+
+	@Override
+	public void addEvent(SimEvent newEvent) {
+		add(new Entry(newEvent, serial++, nextOrder++));
+	}
+
+	@Override
+	public void addEventFirst(SimEvent newEvent) {
+		add(new Entry(newEvent, 0, nextOrder++));
+	}
+
+	private void add(Entry e) {
+		size++;
+		entryIndex.put(e.event, e);
+
+		if(e.time >= topStart) {
+			top.add(e);
+			topMin = Math.min(topMin, e.time);
+			topMax = Math.max(topMax, e.time);
+			return;
+		}
+
+		if(addToRungs(e))
+			return;
+
+		if(bottom.size() - bottomHead > bottomSpreadLimit) {
+			if(spreadBottom()) {
+				bottomSpreadLimit = BOTTOM_THRESHOLD;
+				if(addToRungs(e))
+					return;
+			}
+			else {
+				bottomSpreadLimit = 2 * (bottom.size() - bottomHead);
+			}
+		}
+		insertBottom(e);
+	}
+
+	private boolean addToRungs(Entry e) {
+		for(Rung r:rungs) {
+			if(r.accepts(e.time)) {
+				r.add(e);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Earliest time that goes to the rungs or the top
+	private double getBottomEnd() {
+		for(int i=rungs.size()-1; i>=0; i--) {
+			Rung r = rungs.get(i);
+			if(!r.isExhausted())
+				return r.bucketStart(r.current);
+		}
+		return topStart;
+	}
+
+	private void insertBottom(Entry e) {
+		compactBottom();
+		int lo = bottomHead, hi = bottom.size();
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(ORDER.compare(bottom.get(mid), e) <= 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		bottom.add(lo, e);
+	}
+
+	private void compactBottom() {
+		if(bottomHead > 0 && bottomHead * 2 >= bottom.size()) {
+			bottom = new ArrayList<Entry>(bottom.subList(bottomHead, bottom.size()));
+			bottomHead = 0;
+		}
+	}
+
+	// Moves the bottom to a new last rung, so that insertions do not shift a long list.
+	private boolean spreadBottom() {
+		List<Entry> entries = new ArrayList<Entry>();
+		for(int i=bottomHead; i<bottom.size(); i++) {
+			if(!bottom.get(i).removed)
+				entries.add(bottom.get(i));
+		}
+		if(entries.size() < 2 || rungs.size() >= MAX_RUNGS)
+			return false;
+
+		double start = entries.get(0).time;
+		double end = getBottomEnd();
+		if(!(entries.get(entries.size()-1).time > start) || !(end > start) || Double.isInfinite(end))
+			return false;
+
+		Rung r = new Rung(start, (end - start) / entries.size(), entries.size());
+		for(Entry e:entries)
+			r.add(e);
+		rungs.add(r);
+		bottom = new ArrayList<Entry>();
+		bottomHead = 0;
+		return true;
+	}
+
+	/**
+	 * Appends the next events in order to the bottom, after dropping the dead head of the bottom if it is long.
+	 * Called only when all events in the bottom are visited.
+	 *
+	 * @return position of the appended events in the bottom, or -1 if there is no event after the bottom.
+	 */
+	private int extendBottom() {
+		while(true) {
+			List<Entry> next = takeNextEntries();
+			if(next == null)
+				return -1;
+			if(next.isEmpty())
+				continue;
+
+			compactBottom();
+			int start = bottom.size();
+			bottom.addAll(next);
+			return start;
+		}
+	}
+
+	/**
+	 * @return the next events in order, an empty list if they are spread over a new rung, or null if none left
+	 */
+	private List<Entry> takeNextEntries() {
+		while(true) {
+			if(rungs.isEmpty()) {
+				if(top.isEmpty())
+					return null;
+				return spreadTop();
+			}
+
+			Rung r = rungs.get(rungs.size()-1);
+			List<Entry> bucket = r.pollBucket();
+			if(bucket == null) {
+				rungs.remove(rungs.size()-1);	// All events of the rung are taken
+				continue;
+			}
+
+			List<Entry> entries = new ArrayList<Entry>(bucket.size());
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			for(Entry e:bucket) {
+				if(e.removed)
+					continue;
+				entries.add(e);
+				min = Math.min(min, e.time);
+				max = Math.max(max, e.time);
+			}
+			if(entries.isEmpty())
+				continue;
+
+			if(entries.size() > BUCKET_THRESHOLD && rungs.size() < MAX_RUNGS && min < max) {
+				// Spread the bucket over a finer rung
+				double start = r.bucketStart(r.current-1);
+				double end = r.bucketStart(r.current);
+				if(end > start) {
+					Rung child = new Rung(start, (end - start) / entries.size(), entries.size());
+					for(Entry e:entries)
+						child.add(e);
+					rungs.add(child);
+					continue;
+				}
+			}
+
+			Collections.sort(entries, ORDER);
+			return entries;
+		}
+	}
+
+	// Moves the top to a new rung (returns an empty list), or returns its events in order if all are at the same time.
+	private List<Entry> spreadTop() {
+		List<Entry> entries = top;
+		double min = topMin, max = topMax;
+		top = new ArrayList<Entry>();
+		topMin = Double.POSITIVE_INFINITY;
+		topMax = Double.NEGATIVE_INFINITY;
+		topStart = Math.nextUp(max);
+
+		if(min < max) {
+			Rung r = new Rung(min, (max - min) / entries.size(), entries.size());
+			for(Entry e:entries) {
+				if(!e.removed)
+					r.add(e);
+			}
+			rungs.add(r);
+			return Collections.emptyList();
+		}
+		else {
+			// All at the same time
+			List<Entry> live = new ArrayList<Entry>(entries.size());
+			for(Entry e:entries) {
+				if(!e.removed)
+					live.add(e);
+			}
+			Collections.sort(live, ORDER);
+			return live;
+		}
+	}
+
+	// Skips removed events at the head of the bottom
+	private void skipRemoved() {
+		while(bottomHead < bottom.size() && bottom.get(bottomHead).removed) {
+			bottom.set(bottomHead, null);
+			bottomHead++;
+		}
+	}
+
+	@Override
+	public Iterator<SimEvent> iterator() {
+		return new Iterator<SimEvent>() {
+			private int position = bottomHead;	// Next entry in the bottom
+			private Entry last = null;
+
+			@Override
+			public boolean hasNext() {
+				while(true) {
+					if(position < bottomHead)
+						position = bottomHead;
+					while(position < bottom.size() && bottom.get(position).removed)
+						position++;
+					if(position < bottom.size())
+						return true;
+					int start = extendBottom();
+					if(start < 0)
+						return false;
+					position = start;
+				}
+			}
+
+			@Override
+			public SimEvent next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				last = bottom.get(position++);
+				return last.event;
+			}
+
+			@Override
+			public void remove() {
+				if(last == null || last.removed)
+					throw new IllegalStateException();
+				markRemoved(last);
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean remove(SimEvent event) {
+		Entry e = entryIndex.get(event);
+		if(e == null)
+			return false;
+		markRemoved(e);
+		skipRemoved();
+		return true;
+	}
+
+	private void markRemoved(Entry e) {
+		e.removed = true;
+		entryIndex.remove(e.event);
+		size--;
+	}
+
+	@Override
+	public boolean removeAll(Collection<SimEvent> events) {
+		boolean ret = false;
+		for(SimEvent ev:events)
+			ret |= remove(ev);
+		return ret;
+	}
+
+	@Override
+	public void clear() {
+		top = new ArrayList<Entry>();
+		topStart = Double.NEGATIVE_INFINITY;
+		topMin = Double.POSITIVE_INFINITY;
+		topMax = Double.NEGATIVE_INFINITY;
+		rungs = new ArrayList<Rung>();
+		bottom = new ArrayList<Entry>();
+		bottomHead = 0;
+		bottomSpreadLimit = BOTTOM_THRESHOLD;
+		entryIndex = new IdentityHashMap<SimEvent, Entry>();
+		size = 0;
+	}
+
+	private static class Entry {
+		final SimEvent event;
+		final double time;
+		final long serial;
+		final long order;
+		boolean removed = false;
+
+		Entry(SimEvent event, long serial, long order) {
+			this.event = event;
+			this.time = event.eventTime();
+			this.serial = serial;
+			this.order = order;
+		}
+	}
+
+	/**
+	 * Buckets of equal width. Bucket i holds events from bucketStart(i) to bucketStart(i+1);
+	 * the last bucket also holds everything after it.
+	 * Buckets before 'current' are already moved to a finer rung or to the bottom.
+	 */
+	private static class Rung {
+		final double start;
+		final double width;
+		final List<Entry>[] buckets;
+		int current = 0;
+
+		@SuppressWarnings("unchecked")
+		Rung(double start, double width, int numBuckets) {
+			this.start = start;
+			this.width = width;
+			this.buckets = new List[Math.max(1, numBuckets)];
+		}
+
+		double bucketStart(int i) {
+			return start + i * width;
+		}
+
+		boolean isExhausted() {
+			return current >= buckets.length;
+		}
+
+		boolean accepts(double time) {
+			return !isExhausted() && time >= bucketStart(current);
+		}
+
+		void add(Entry e) {
+			// Bucket index by comparing with the bucket starts, so that it agrees with bucketStart() exactly
+			int i = (width > 0) ? (int) Math.min(buckets.length - 1, Math.max(0, Math.floor((e.time - start) / width))) : 0;
+			while(i > current && e.time < bucketStart(i))
+				i--;
+			while(i < buckets.length - 1 && e.time >= bucketStart(i+1))
+				i++;
+			if(i < current)
+				i = current;
+
+			if(buckets[i] == null)
+				buckets[i] = new ArrayList<Entry>();
+			buckets[i].add(e);
+		}
+
+		// Takes the next non-empty bucket, or null if none is left.
+		List<Entry> pollBucket() {
+			while(current < buckets.length) {
+				List<Entry> b = buckets[current];
+				buckets[current] = null;
+				current++;
+				if(b != null && !b.isEmpty())
+					return b;
+			}
+			return null;
+		}
+	}
+}
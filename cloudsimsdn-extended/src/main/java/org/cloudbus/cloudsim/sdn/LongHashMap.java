@@ -0,0 +1,203 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with primitive long keys (open addressing with linear probing).
+ * Used for tables looked up on every packet, where building a String or a boxed key
+ * per lookup is too expensive. Null values are not allowed.
+ * Iteration order depends only on the keys and the insertion history, so it is deterministic.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class LongHashMap<V> {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final double LOAD_FACTOR = 0.6;
+
+	private long[] keys;
+	private Object[] values;	// null means the slot is empty
+	private int size = 0;
+	private int mask;
+	private int resizeThreshold;
+
+	private Collection<V> valuesView = null;
+
+	public LongHashMap() {
+		allocate(DEFAULT_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private static int hash(long key) {
+		// Finalizer of MurmurHash3 to spread the packed bits over the table
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	private int indexOf(long key) {
+		int i = hash(key) & mask;
+		while(values[i] != null) {
+			if(keys[i] == key)
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V) values[i];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if(value == null)
+			throw new IllegalArgumentException("LongHashMap.put(): null value is not allowed. key="+key);
+
+		int i = hash(key) & mask;
+		while(values[i] != null) {
+			if(keys[i] == key) {
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+
+		if(size > resizeThreshold)
+			resize(keys.length * 2);
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int i = indexOf(key);
+		if(i < 0)
+			return null;
+
+		V old = (V) values[i];
+		values[i] = null;
+		size--;
+
+		// Shift back the following entries of the probe sequence to fill the hole.
+		int hole = i;
+		int j = (i + 1) & mask;
+		while(values[j] != null) {
+			int home = hash(keys[j]) & mask;
+			// Move the entry if its home slot is not within (hole, j] (cyclic).
+			if(((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				values[j] = null;
+				hole = j;
+			}
+			j = (j + 1) & mask;
+		}
+		return old;
+	}
+
+	public void clear() {
+		for(int i=0; i<values.length; i++)
+			values[i] = null;
+		size = 0;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		size = 0;
+		for(int i=0; i<oldValues.length; i++) {
+			if(oldValues[i] != null) {
+				int j = hash(oldKeys[i]) & mask;
+				while(values[j] != null)
+					j = (j + 1) & mask;
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+				size++;
+			}
+		}
+	}
+
+	/**
+	 * @return a live view of the values. The map must not be modified while iterating.
+	 */
+	public Collection<V> values() {
+		if(valuesView == null) {
+			valuesView = new AbstractCollection<V>() {
+				@Override
+				public Iterator<V> iterator() {
+					return new ValueIterator();
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return valuesView;
+	}
+
+	private class ValueIterator implements Iterator<V> {
+		private final Object[] table = values;
+		private int next = advance(0);
+
+		private int advance(int from) {
+			while(from < table.length && table[from] == null)
+				from++;
+			return from;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < table.length;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if(next >= table.length)
+				throw new NoSuchElementException();
+			V value = (V) table[next];
+			next = advance(next + 1);
+			return value;
+		}
+	}
+}
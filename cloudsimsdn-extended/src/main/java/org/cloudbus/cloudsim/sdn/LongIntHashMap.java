@@ -0,0 +1,173 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive long keys to non-negative int values (open addressing with linear probing),
+ * stored in two flat arrays without an object per entry. See {@link LongHashMap}.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class LongIntHashMap {
+	public static final int NO_VALUE = -1;	// Returned if the key is not found; also marks an empty slot
+
+	private static final int DEFAULT_CAPACITY = 8;
+	private static final double LOAD_FACTOR = 0.6;
+
+	private long[] keys;
+	private int[] values;
+	private int size = 0;
+	private int mask;
+	private int resizeThreshold;
+
+	public LongIntHashMap() {
+		allocate(DEFAULT_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, NO_VALUE);
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private static int hash(long key) {
+		// Finalizer of MurmurHash3 to spread the packed bits over the table
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	private int indexOf(long key) {
+		int i = hash(key) & mask;
+		while(values[i] != NO_VALUE) {
+			if(keys[i] == key)
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * @return the value, or {@link #NO_VALUE} if the key is not found
+	 */
+	public int get(long key) {
+		int i = indexOf(key);
+		return i < 0 ? NO_VALUE : values[i];
+	}
+
+	/**
+	 * @return the previous value, or {@link #NO_VALUE}
+	 */
+	public int put(long key, int value) {
+		if(value < 0)
+			throw new IllegalArgumentException("LongIntHashMap.put(): negative value is not allowed. key="+key);
+
+		int i = hash(key) & mask;
+		while(values[i] != NO_VALUE) {
+			if(keys[i] == key) {
+				int old = values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+
+		if(size > resizeThreshold)
+			resize(keys.length * 2);
+		return NO_VALUE;
+	}
+
+	/**
+	 * @return the removed value, or {@link #NO_VALUE}
+	 */
+	public int remove(long key) {
+		int i = indexOf(key);
+		if(i < 0)
+			return NO_VALUE;
+
+		int old = values[i];
+		values[i] = NO_VALUE;
+		size--;
+
+		// Shift back the following entries of the probe sequence to fill the hole.
+		int hole = i;
+		int j = (i + 1) & mask;
+		while(values[j] != NO_VALUE) {
+			int home = hash(keys[j]) & mask;
+			// Move the entry if its home slot is not within (hole, j] (cyclic).
+			if(((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				values[j] = NO_VALUE;
+				hole = j;
+			}
+			j = (j + 1) & mask;
+		}
+		return old;
+	}
+
+	public void clear() {
+		if(size == 0)
+			return;
+		Arrays.fill(values, NO_VALUE);
+		size = 0;
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		size = 0;
+		for(int i=0; i<oldValues.length; i++) {
+			if(oldValues[i] != NO_VALUE) {
+				int j = hash(oldKeys[i]) & mask;
+				while(values[j] != NO_VALUE)
+					j = (j + 1) & mask;
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+				size++;
+			}
+		}
+	}
+
+	/**
+	 * @return the keys in the table order
+	 */
+	public long[] keys() {
+		long[] result = new long[size];
+		int n = 0;
+		for(int i=0; i<values.length; i++) {
+			if(values[i] != NO_VALUE)
+				result[n++] = keys[i];
+		}
+		return result;
+	}
+}
@@ -41,6 +41,12 @@ public interface PacketScheduler {
 	public int getInTransmissionNum();
 	
 	public void setTimeOut(double timeoutSecond);
+	/**
+	 * Stops an in-flight transmission whose deadline is passed. It is returned by {@link #getTimedOutTransmission()}.
+	 * 
+	 * @return false if the transmission is not in flight (e.g. already completed).
+	 */
+	public boolean timeOutTransmission(Transmission transmission);
 	public LinkedList<Transmission> getTimedOutTransmission();
 	public void resetTimedOutTransmission();
 
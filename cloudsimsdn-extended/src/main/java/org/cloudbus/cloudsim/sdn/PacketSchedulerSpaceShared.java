@@ -125,6 +125,14 @@ public class PacketSchedulerSpaceShared implements PacketScheduler {
 		timeoutLimit = timeoutSecond;
 	}
 
+	@Override
+	public boolean timeOutTransmission(Transmission transmission) {
+		if(!inTransmission.remove(transmission))
+			return false;
+		timeoutTransmission.add(transmission);
+		return true;
+	}
+
 	@Override
 	public void resetTimedOutTransmission() {
 		timeoutTransmission = new LinkedList<Transmission>();
@@ -0,0 +1,364 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.sdn.virtualcomponents.Channel;
+import org.cloudbus.cloudsim.sdn.workload.Transmission;
+
+/**
+ * Network packet scheduler based on virtual time, for channels with many concurrent transmissions.
+ * The channel keeps a virtual clock counting the bytes served to each transmission so far.
+ * Every transmission gets a finish tag (virtual clock at which it completes) and is kept in a heap by the tag.
+ * Updating the channel only advances the virtual clock and pops the completed tags,
+ * so add, complete and next finish time are O(log n) instead of visiting every transmission.
+ *
+ * Space shared mode gives the same result as {@link PacketSchedulerSpaceShared}: bandwidth is shared equally.
+ * Time shared mode gives the same result as {@link PacketSchedulerTimeShared}: transmissions are served in full bandwidth one by one.
+ * As there, at most one transmission completes per update and the time left after it is not given to the next one.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class PacketSchedulerVirtualTime implements PacketScheduler {
+	// Remaining bytes less than this are regarded as completed (other schedulers round processed bytes).
+	private static final double COMPLETION_TOLERANCE = 0.5;
+
+	protected LinkedList<Transmission> completed = new LinkedList<Transmission>();
+	protected LinkedList<Transmission> timeoutTransmission = new LinkedList<Transmission>();
+	protected double previousTime;
+
+	protected double timeoutLimit = Double.POSITIVE_INFINITY;	// INFINITE = Never timeout
+
+	protected Channel channel;
+	protected boolean isTimeShared;
+
+	private double virtualTime = 0;		// Bytes served to a transmission being processed so far
+	private double lastFinishTag = 0;	// Used in time shared mode: a new transmission starts after all the others
+	private long processedBytes = 0;	// Processed but not yet reported by updatePacketProcessing()
+	private long nextSequence = 0;
+
+	private Map<Transmission, Entry> entries = new HashMap<Transmission, Entry>();
+	private EntryHeap byFinishTag = new EntryHeap(false);
+	private EntryHeap byStartTime = new EntryHeap(true);	// Only used if timeout is set
+
+	public PacketSchedulerVirtualTime(Channel ch, boolean isTimeShared) {
+		this.channel = ch;
+		this.isTimeShared = isTimeShared;
+	}
+
+	@Override
+	public long updatePacketProcessing() {
+		advance(CloudSim.clock());
+		removeTimeoutTransmissions();
+
+		long processed = processedBytes;
+		processedBytes = 0;
+		return processed;
+	}
+
+	/**
+	 * Advances the virtual clock up to the given time and collects completed transmissions.
+	 */
+	private void advance(double currentTime) {
+		double timeSpent = currentTime - this.previousTime;
+
+		if(timeSpent <= 0 || entries.isEmpty())
+			return;	// Nothing changed
+
+		processedBytes += Math.round(timeSpent * channel.getAllocatedBandwidth());
+		virtualTime += timeSpent * getVirtualClockRate();
+		previousTime = currentTime;
+
+		while(!byFinishTag.isEmpty() && byFinishTag.peek().finishTag - virtualTime < COMPLETION_TOLERANCE) {
+			Entry e = byFinishTag.peek();
+			remove(e);
+			completed.add(e.transmission);
+			if(isTimeShared) {
+				// Drop the surplus after the finish tag, so the next transmission starts from now
+				virtualTime = Math.min(virtualTime, e.finishTag);
+				break;
+			}
+		}
+	}
+
+	// Speed of the virtual clock: bytes per second given to a transmission being processed.
+	private double getVirtualClockRate() {
+		if(isTimeShared || entries.isEmpty())
+			return channel.getAllocatedBandwidth();
+
+		return channel.getAllocatedBandwidth()/entries.size();
+	}
+
+	private void removeTimeoutTransmissions() {
+		if(this.timeoutLimit == Double.POSITIVE_INFINITY)
+			return;
+
+		double startTimeLimit = CloudSim.clock() - this.timeoutLimit;
+		while(!byStartTime.isEmpty() && byStartTime.peek().startTime < startTimeLimit) {
+			// This Tr is started before (current time - timeout). Cannot complete.
+			Entry e = byStartTime.peek();
+			remove(e);
+			timeoutTransmission.add(e.transmission);
+		}
+	}
+
+	@Override
+	public double addTransmission(Transmission transmission) {
+		if(entries.isEmpty()) {
+			previousTime = CloudSim.clock();
+			// Rebase the virtual clock while the channel is idle, to keep its precision.
+			virtualTime = 0;
+			lastFinishTag = 0;
+		}
+		else {
+			// Bring the virtual clock up to now at the current rate before the rate changes.
+			advance(CloudSim.clock());
+		}
+
+		Entry e = new Entry(transmission, nextSequence++);
+		if(isTimeShared) {
+			e.finishTag = Math.max(virtualTime, lastFinishTag) + transmission.getSize();
+			lastFinishTag = e.finishTag;
+		}
+		else {
+			e.finishTag = virtualTime + transmission.getSize();
+		}
+
+		entries.put(transmission, e);
+		byFinishTag.add(e);
+		if(this.timeoutLimit != Double.POSITIVE_INFINITY)
+			byStartTime.add(e);
+
+		return estimateFinishTime(transmission);
+	}
+
+	@Override
+	public void removeTransmission(Transmission transmission) {
+		Entry e = entries.get(transmission);
+		if(e != null)
+			remove(e);
+	}
+
+	private void remove(Entry e) {
+		entries.remove(e.transmission);
+		byFinishTag.remove(e);
+		byStartTime.remove(e);
+
+		// Keep the remaining size of the transmission up to date
+		long remaining = (long) Math.max(0, Math.round(getRemainingBytes(e)));
+		e.transmission.addCompletedLength(e.transmission.getSize() - remaining);
+	}
+
+	// Bytes of the transmission to be sent. In time shared mode, a waiting transmission has its full size.
+	private double getRemainingBytes(Entry e) {
+		return Math.min(e.transmission.getSize(), e.finishTag - virtualTime);
+	}
+
+	@Override
+	public double nextFinishTime() {
+		if(byFinishTag.isEmpty())
+			return Double.POSITIVE_INFINITY;
+
+		double rate = getVirtualClockRate();
+		if(rate == 0)
+			return Double.POSITIVE_INFINITY;
+
+		double delay = Math.max(0, byFinishTag.peek().finishTag - virtualTime) / rate;
+		if(isTimeShared && Math.abs(delay) < CloudSim.getMinTimeBetweenEvents()) {
+			return CloudSim.getMinTimeBetweenEvents();
+		}
+		return delay;
+	}
+
+	@Override
+	public double estimateFinishTime(Transmission t) {
+		double rate = getVirtualClockRate();
+		if(rate == 0)
+			return Double.POSITIVE_INFINITY;
+
+		Entry e = entries.get(t);
+		double remaining = (e != null) ? getRemainingBytes(e) : t.getSize();
+		return remaining / rate;
+	}
+
+	@Override
+	public int getInTransmissionNum() {
+		return entries.size();
+	}
+
+	@Override
+	public void setTimeOut(double timeoutSecond) {
+		if(timeoutLimit == Double.POSITIVE_INFINITY && timeoutSecond != Double.POSITIVE_INFINITY) {
+			for(Entry e:entries.values())
+				byStartTime.add(e);
+		}
+		else if(timeoutSecond == Double.POSITIVE_INFINITY) {
+			byStartTime.clear();
+		}
+		timeoutLimit = timeoutSecond;
+	}
+
+	@Override
+	public boolean timeOutTransmission(Transmission transmission) {
+		Entry e = entries.get(transmission);
+		if(e == null)
+			return false;
+		remove(e);
+		timeoutTransmission.add(transmission);
+		return true;
+	}
+
+	@Override
+	public LinkedList<Transmission> getTimedOutTransmission() {
+		return new LinkedList<Transmission>(timeoutTransmission);
+	}
+
+	@Override
+	public void resetTimedOutTransmission() {
+		timeoutTransmission = new LinkedList<Transmission>();
+	}
+
+	@Override
+	public LinkedList<Transmission> getCompletedTransmission() {
+		return new LinkedList<Transmission>(completed);
+	}
+
+	@Override
+	public void resetCompletedTransmission() {
+		completed = new LinkedList<Transmission>();
+	}
+
+	private static class Entry {
+		final Transmission transmission;
+		final double startTime;
+		final long sequence;	// Breaks ties in insertion order
+		double finishTag;
+		int finishTagIndex = -1;
+		int startTimeIndex = -1;
+
+		Entry(Transmission transmission, long sequence) {
+			this.transmission = transmission;
+			this.startTime = transmission.getPacket().getStartTime();
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * Indexed binary min-heap of entries, ordered either by finish tag or by start time.
+	 */
+	private static class EntryHeap {
+		private final boolean byStartTime;
+		private Entry[] heap = new Entry[16];
+		private int size = 0;
+
+		EntryHeap(boolean byStartTime) {
+			this.byStartTime = byStartTime;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		Entry peek() {
+			return heap[0];
+		}
+
+		void add(Entry e) {
+			if(size == heap.length)
+				heap = Arrays.copyOf(heap, size * 2);
+			heap[size] = e;
+			setIndex(e, size);
+			size++;
+			siftUp(size-1);
+		}
+
+		void remove(Entry e) {
+			int i = getIndex(e);
+			if(i < 0 || i >= size || heap[i] != e)
+				return;
+
+			int last = size - 1;
+			if(i != last) {
+				heap[i] = heap[last];
+				setIndex(heap[i], i);
+			}
+			heap[last] = null;
+			size--;
+			setIndex(e, -1);
+			if(i < size) {
+				siftDown(i);
+				siftUp(i);
+			}
+		}
+
+		void clear() {
+			for(int i=0; i<size; i++) {
+				setIndex(heap[i], -1);
+				heap[i] = null;
+			}
+			size = 0;
+		}
+
+		private int getIndex(Entry e) {
+			return byStartTime ? e.startTimeIndex : e.finishTagIndex;
+		}
+
+		private void setIndex(Entry e, int i) {
+			if(byStartTime)
+				e.startTimeIndex = i;
+			else
+				e.finishTagIndex = i;
+		}
+
+		private boolean less(Entry a, Entry b) {
+			double ka = byStartTime ? a.startTime : a.finishTag;
+			double kb = byStartTime ? b.startTime : b.finishTag;
+			if(ka != kb)
+				return ka < kb;
+			return a.sequence < b.sequence;
+		}
+
+		private void siftUp(int i) {
+			Entry e = heap[i];
+			while(i > 0) {
+				int parent = (i - 1) >>> 1;
+				if(!less(e, heap[parent]))
+					break;
+				heap[i] = heap[parent];
+				setIndex(heap[i], i);
+				i = parent;
+			}
+			heap[i] = e;
+			setIndex(e, i);
+		}
+
+		private void siftDown(int i) {
+			Entry e = heap[i];
+			while(true) {
+				int child = 2 * i + 1;
+				if(child >= size)
+					break;
+				if(child + 1 < size && less(heap[child+1], heap[child]))
+					child++;
+				if(!less(heap[child], e))
+					break;
+				heap[i] = heap[child];
+				setIndex(heap[i], i);
+				i = child;
+			}
+			heap[i] = e;
+			setIndex(e, i);
+		}
+	}
+}
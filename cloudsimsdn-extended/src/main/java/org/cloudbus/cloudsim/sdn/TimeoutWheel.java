@@ -0,0 +1,235 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Hierarchical timing wheel for timeouts of transmissions and cloudlets.
+ * A deadline is registered once when the transmission or the cloudlet starts, and {@link #expire(double)}
+ * returns only the entries whose deadline is passed, instead of scanning everything in flight on every update.
+ *
+ * Each level has {@link #WHEEL_SIZE} slots; a slot of a level covers a whole lower level.
+ * Non-empty slots are kept in a queue ordered by their start time, so idle periods are skipped at once.
+ * An entry can be cancelled with the handle returned by {@link #add(double, Object)}; its payload is released
+ * at once and the entry is dropped when its slot is reached.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class TimeoutWheel<T> {
+	public static final int WHEEL_SIZE = 64;
+
+	private final double tickSize;
+	private final Level<T> wheel;
+	private List<Timeout<T>> dueEntries = new ArrayList<Timeout<T>>();	// Entries within the current tick, checked exactly
+	private PriorityQueue<Bucket<T>> bucketQueue = new PriorityQueue<Bucket<T>>();
+	private int size = 0;
+	private long nextSequence = 0;
+	private long nextBucketId = 0;
+
+	/**
+	 * @param tickSize time covered by a slot of the lowest level
+	 */
+	public TimeoutWheel(double tickSize) {
+		if(!(tickSize > 0) || Double.isInfinite(tickSize))
+			throw new IllegalArgumentException("TimeoutWheel: tick size should be a positive number: "+tickSize);
+		this.tickSize = tickSize;
+		this.wheel = newLevel(1, 0);
+	}
+
+	/**
+	 * Tick size so that deadlines of the given timeout fall into the lowest level.
+	 */
+	public static double getTickSize(double timeout) {
+		if(timeout > 0 && Double.isFinite(timeout))
+			return timeout / WHEEL_SIZE;
+		return 1.0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return handle to cancel the entry
+	 */
+	public Timeout<T> add(double deadline, T payload) {
+		Timeout<T> t = new Timeout<T>(deadline, toTick(deadline), nextSequence++, payload);
+		insert(t);
+		size++;
+		return t;
+	}
+
+	/**
+	 * Cancels the entry so that it is not returned by {@link #expire(double)}.
+	 * @return false if the entry is already expired or cancelled
+	 */
+	public boolean cancel(Timeout<T> t) {
+		if(t.payload == null)
+			return false;
+		t.payload = null;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Removes and returns the entries whose deadline is earlier than the given time, in the order of deadlines.
+	 */
+	public List<T> expire(double currentTime) {
+		long currentTick = toTick(currentTime);
+
+		// Move entries of the passed slots down to the lower levels
+		while(!bucketQueue.isEmpty() && bucketQueue.peek().startTick <= currentTick) {
+			Bucket<T> bucket = bucketQueue.poll();
+			bucket.isQueued = false;
+			advanceClock(bucket.startTick);
+
+			List<Timeout<T>> entries = bucket.entries;
+			bucket.entries = new ArrayList<Timeout<T>>();
+			for(Timeout<T> t:entries) {
+				if(t.payload != null)
+					insert(t);
+			}
+		}
+		advanceClock(currentTick);
+
+		if(dueEntries.isEmpty())
+			return Collections.emptyList();
+
+		List<Timeout<T>> expired = new ArrayList<Timeout<T>>();
+		List<Timeout<T>> remaining = new ArrayList<Timeout<T>>();
+		for(Timeout<T> t:dueEntries) {
+			if(t.payload == null)
+				continue;	// Cancelled
+			if(t.deadline < currentTime)
+				expired.add(t);
+			else
+				remaining.add(t);
+		}
+		dueEntries = remaining;
+
+		if(expired.isEmpty())
+			return Collections.emptyList();
+
+		Collections.sort(expired);
+		List<T> payloads = new ArrayList<T>(expired.size());
+		for(Timeout<T> t:expired) {
+			payloads.add(t.payload);
+			t.payload = null;
+		}
+		size -= expired.size();
+		return payloads;
+	}
+
+	private long toTick(double time) {
+		return (long) Math.floor(time / tickSize);
+	}
+
+	private void insert(Timeout<T> t) {
+		Level<T> level = wheel;
+		while(true) {
+			if(t.tick < level.currentTick + level.span) {
+				// Within the current tick (only possible at the lowest level)
+				dueEntries.add(t);
+				return;
+			}
+			if(t.tick < level.currentTick + level.span * WHEEL_SIZE) {
+				long slot = Math.floorDiv(t.tick, level.span);
+				Bucket<T> bucket = level.buckets[(int) Math.floorMod(slot, (long) WHEEL_SIZE)];
+				bucket.entries.add(t);
+				if(!bucket.isQueued) {
+					bucket.startTick = slot * level.span;
+					bucket.isQueued = true;
+					bucketQueue.add(bucket);
+				}
+				return;
+			}
+			if(level.overflow == null) {
+				long span = level.span * WHEEL_SIZE;
+				level.overflow = newLevel(span, level.currentTick - Math.floorMod(level.currentTick, span));
+			}
+			level = level.overflow;
+		}
+	}
+
+	private Level<T> newLevel(long span, long currentTick) {
+		Level<T> level = new Level<T>(span, currentTick, nextBucketId);
+		nextBucketId += WHEEL_SIZE;
+		return level;
+	}
+
+	private void advanceClock(long tick) {
+		for(Level<T> level = wheel; level != null; level = level.overflow) {
+			if(tick >= level.currentTick + level.span)
+				level.currentTick = tick - Math.floorMod(tick, level.span);
+		}
+	}
+
+	/**
+	 * Entry of the wheel, returned as a handle to cancel it.
+	 */
+	public static class Timeout<T> implements Comparable<Timeout<T>> {
+		final double deadline;
+		final long tick;
+		final long sequence;
+		T payload;	// null once expired or cancelled
+
+		Timeout(double deadline, long tick, long sequence, T payload) {
+			this.deadline = deadline;
+			this.tick = tick;
+			this.sequence = sequence;
+			this.payload = payload;
+		}
+
+		@Override
+		public int compareTo(Timeout<T> o) {
+			int cmp = Double.compare(deadline, o.deadline);
+			return cmp != 0 ? cmp : Long.compare(sequence, o.sequence);
+		}
+	}
+
+	private static class Bucket<T> implements Comparable<Bucket<T>> {
+		final long id;	// Breaks ties between levels deterministically
+		List<Timeout<T>> entries = new ArrayList<Timeout<T>>();
+		long startTick;
+		boolean isQueued = false;
+
+		Bucket(long id) {
+			this.id = id;
+		}
+
+		@Override
+		public int compareTo(Bucket<T> o) {
+			int cmp = Long.compare(startTick, o.startTick);
+			return cmp != 0 ? cmp : Long.compare(id, o.id);
+		}
+	}
+
+	private static class Level<T> {
+		final long span;	// Ticks covered by a slot
+		long currentTick;
+		Level<T> overflow = null;
+		@SuppressWarnings("unchecked")
+		final Bucket<T>[] buckets = new Bucket[WHEEL_SIZE];
+
+		Level(long span, long currentTick, long firstBucketId) {
+			this.span = span;
+			this.currentTick = currentTick;
+			for(int i=0; i<WHEEL_SIZE; i++)
+				buckets[i] = new Bucket<T>(firstBucketId + i);
+		}
+	}
+}
@@ -9,9 +9,11 @@
 package org.cloudbus.cloudsim.sdn;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.sdn.virtualcomponents.SDNVm;
 
 public class VmSchedulerTimeSharedOverSubscriptionDynamicCloudlets extends VmSchedulerTimeSharedOverSubscriptionDynamicVM {
@@ -20,6 +22,12 @@ public class VmSchedulerTimeSharedOverSubscriptionDynamicCloudlets extends VmSch
 		super(pelist);
 	}
 	
+	@Override
+	public double redistributeMipsDueToOverSubscriptionDynamic(Collection<? extends Vm> changedVms) {
+		// The necessary MIPS follow the cloudlets of each VM, not only its idle state, so recompute all shares
+		return super.redistributeMipsDueToOverSubscriptionDynamic(null);
+	}
+	
 	@Override
 	protected List<Double> getNecessaryMipsForVm(SDNVm vm) {
 		List<Double> mipsNecessary = new ArrayList<Double>();
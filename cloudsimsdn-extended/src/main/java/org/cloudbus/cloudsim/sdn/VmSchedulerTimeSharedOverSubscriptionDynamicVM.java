@@ -9,6 +9,7 @@
 package org.cloudbus.cloudsim.sdn;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +39,111 @@ import org.cloudbus.cloudsim.sdn.virtualcomponents.SDNVm;
 public class VmSchedulerTimeSharedOverSubscriptionDynamicVM extends VmSchedulerTimeSharedOverSubscription implements PowerUtilizationInterface{
 	private HashMap<String, Vm> vmMap = new HashMap<String, Vm>();
 	
+	// State of the incremental redistribution (Configuration.INCREMENTAL_MIPS_REDISTRIBUTION).
+	// Shares are rebuilt from the requested MIPS map after the parent class changed the allocation.
+	private ArrayList<VmShare> shares = null;
+	private HashMap<String, VmShare> sharesByUid = null;
+	private double totalRequiredMips = 0;
+	private int idlePeNum = 0;
+	private double scalingFactor = 1.0;
+	private double mipsForIdlePe = 0;
+	private double totalAllocatedMips = 0;
+	
+	private class VmShare {
+		final String uid;
+		final SDNVm vm;
+		double[] capped = new double[0];	// requested MIPS capped by the PE capacity, 0 for idle VM
+		double required;	// sum of capped MIPS, 10% of it for a VM migrating in
+		int idlePes;
+		boolean migratingIn;
+		boolean migratingOut;
+		double allocated;	// sum of the allocated MIPS
+		boolean changed;
+		
+		VmShare(String uid, SDNVm vm) {
+			this.uid = uid;
+			this.vm = vm;
+			// The migration lists only change along with allocatePesForVm/deallocatePesForVm, which drop the shares
+			this.migratingIn = getVmsMigratingIn().contains(uid);
+			this.migratingOut = getVmsMigratingOut().contains(uid);
+		}
+		
+		/**
+		 * Recomputes the capped MIPS and updates the totals of the scheduler with the difference.
+		 */
+		void update() {
+			List<Double> mipsShareRequested = getNecessaryMipsForVm(vm);
+			boolean idle = vm.isIdle();
+			
+			changed = false;
+			if(capped.length != mipsShareRequested.size()) {
+				capped = new double[mipsShareRequested.size()];
+				changed = true;
+			}
+			
+			double peMips = getPeCapacity();
+			double newRequired = 0;
+			int newIdlePes = 0;
+			for(int i=0; i<capped.length; i++) {
+				double cappedMips = Math.min(peMips, mipsShareRequested.get(i));
+				if(idle) {
+					cappedMips = 0;	// Don't give any MIPS to idle VM
+					newIdlePes++;
+				}
+				if(capped[i] != cappedMips) {
+					capped[i] = cappedMips;
+					changed = true;
+				}
+				newRequired += cappedMips;
+			}
+			if(migratingIn) {
+				// the destination host only experience 10% of the migrating VM's MIPS
+				newRequired *= 0.1;
+			}
+			
+			totalRequiredMips += newRequired - required;
+			idlePeNum += newIdlePes - idlePes;
+			required = newRequired;
+			idlePes = newIdlePes;
+		}
+		
+		void allocate() {
+			List<Double> updatedMipsAllocation = new ArrayList<Double>(capped.length);
+			double sum = 0;
+			for(double mips:capped) {
+				if(migratingOut) {
+					mips *= scalingFactor;
+					// performance degradation due to migration = 10% MIPS
+					mips *= 0.9;
+				} else if(migratingIn) {
+					// the destination host only experiences 10% of the migrating VM's MIPS
+					mips *= 0.1;
+					mips *= scalingFactor;
+				} else {
+					mips *= scalingFactor;
+				}
+				
+				if(mips == 0)
+					mips = mipsForIdlePe;
+				
+				mips = Math.floor(mips);
+				updatedMipsAllocation.add(mips);
+				sum += mips;
+			}
+			getMipsMap().put(uid, updatedMipsAllocation);
+			totalAllocatedMips += sum - allocated;
+			allocated = sum;
+		}
+		
+		boolean hasIdlePe() {
+			for(double mips:capped) {
+				if(mips == 0)
+					return true;
+			}
+			return false;
+		}
+	}
+	
 	public VmSchedulerTimeSharedOverSubscriptionDynamicVM(List<? extends Pe> pelist) {
 		super(pelist);
 	}
@@ -46,8 +152,23 @@ public class VmSchedulerTimeSharedOverSubscriptionDynamicVM extends VmSchedulerT
 	 * Check the number of cloudlets processing in each VM. Steal MIPS from idle VM to give to busy VMs 
 	 */
 	public double redistributeMipsDueToOverSubscriptionDynamic() {
-		if(getAvailableMips() > 0)
+		return redistributeMipsDueToOverSubscriptionDynamic(null);
+	}
+	
+	/**
+	 * Same as {@link #redistributeMipsDueToOverSubscriptionDynamic()}, given the VMs whose load may have changed
+	 * since the last call. With the incremental redistribution only their shares are recomputed.
+	 * 
+	 * @param changedVms VMs to recompute, or null for all VMs
+	 */
+	public double redistributeMipsDueToOverSubscriptionDynamic(Collection<? extends Vm> changedVms) {
+		if(getAvailableMips() > 0) {
+			shares = null;
 			return 1.0;
+		}
+		
+		if(Configuration.INCREMENTAL_MIPS_REDISTRIBUTION)
+			return redistributeMipsIncremental(changedVms);
 		
 		double totalRequiredMipsByAllVms = 0;
 		int idlePeNum=0;
@@ -130,20 +251,104 @@ public class VmSchedulerTimeSharedOverSubscriptionDynamicVM extends VmSchedulerT
 		return scalingFactor;
 	}
 	
+	/**
+	 * Same as the full redistribution, but only the changed VMs get a new allocation while the scaling factor
+	 * stays the same. All VMs are reallocated when the host crosses the over-subscription threshold or,
+	 * when overloaded, whenever the total required MIPS changes.
+	 */
+	private double redistributeMipsIncremental(Collection<? extends Vm> changedVms) {
+		boolean rebuild = (shares == null);
+		if(rebuild) {
+			shares = new ArrayList<VmShare>();
+			sharesByUid = new HashMap<String, VmShare>();
+			for(String vmUid : getMipsMapRequested().keySet()) {
+				VmShare share = new VmShare(vmUid, getVm(vmUid));
+				shares.add(share);
+				sharesByUid.put(vmUid, share);
+			}
+		}
+		
+		List<VmShare> updated = shares;
+		if(!rebuild && changedVms != null) {
+			updated = new ArrayList<VmShare>(changedVms.size());
+			for(Vm vm:changedVms) {
+				VmShare share = sharesByUid.get(vm.getUid());
+				if(share != null)
+					updated.add(share);
+			}
+		}
+		for(VmShare share:updated)
+			share.update();
+		
+		double totalAvailableMips = PeList.getTotalMips(getPeList());
+		double newScalingFactor = getScalingFactor(totalAvailableMips);
+		
+		if(rebuild || newScalingFactor != scalingFactor) {
+			// Sum up again to drop the rounding errors of the incremental updates
+			totalRequiredMips = 0;
+			idlePeNum = 0;
+			for(VmShare share:shares) {
+				totalRequiredMips += share.required;
+				idlePeNum += share.idlePes;
+			}
+			scalingFactor = getScalingFactor(totalAvailableMips);
+			mipsForIdlePe = getMipsForIdlePe(totalAvailableMips);
+			
+			getMipsMap().clear();
+			totalAllocatedMips = 0;
+			for(VmShare share:shares) {
+				share.allocated = 0;
+				share.allocate();
+			}
+		}
+		else {
+			double newMipsForIdlePe = getMipsForIdlePe(totalAvailableMips);
+			boolean idleShareChanged = (newMipsForIdlePe != mipsForIdlePe);
+			mipsForIdlePe = newMipsForIdlePe;
+			
+			for(VmShare share:updated) {
+				if(share.changed)
+					share.allocate();
+			}
+			if(idleShareChanged) {
+				for(VmShare share:shares) {
+					if(share.hasIdlePe())
+						share.allocate();
+				}
+			}
+		}
+		
+		verifyMipsAllocation(totalAllocatedMips);
+		return scalingFactor;
+	}
+	
+	private double getScalingFactor(double totalAvailableMips) {
+		double factor = totalAvailableMips / totalRequiredMips;
+		return (factor > 1.0) ? 1.0 : factor;
+	}
+	
+	private double getMipsForIdlePe(double totalAvailableMips) {
+		// Leftover mips will be distributed idle PEs
+		if(totalAvailableMips / totalRequiredMips > 1.0 && idlePeNum != 0)
+			return (totalAvailableMips - totalRequiredMips) / idlePeNum;
+		return 0;
+	}
+	
 	protected List<Double> getNecessaryMipsForVm(SDNVm vm) {
 		return getMipsMapRequested().get(vm.getUid());
 	}
 
 	protected void verifyMipsAllocation() {
-		double totalAvailableMips = PeList.getTotalMips(getPeList());
-		
 		double allocatedMips = 0;
 		for(List<Double> mpslist:getMipsMap().values()) {
 			for(double mips:mpslist)
 				allocatedMips += mips;
 		}
-		
-		if(allocatedMips > totalAvailableMips) {
+		verifyMipsAllocation(allocatedMips);
+	}
+	
+	private void verifyMipsAllocation(double allocatedMips) {
+		if(allocatedMips > PeList.getTotalMips(getPeList())) {
 			System.err.println("verifyMipsAllocation: cannot allocate");
 			System.exit(1);
 		}
@@ -152,9 +357,22 @@ public class VmSchedulerTimeSharedOverSubscriptionDynamicVM extends VmSchedulerT
 	@Override
 	public boolean allocatePesForVm(Vm vm, List<Double> mipsShareRequested) { 
 		vmMap.put(vm.getUid(), vm);
+		shares = null;
 		return super.allocatePesForVm(vm, mipsShareRequested);
 	}
 	
+	@Override
+	public void deallocatePesForVm(Vm vm) {
+		shares = null;
+		super.deallocatePesForVm(vm);
+	}
+	
+	@Override
+	public void deallocatePesForAllVms() {
+		shares = null;
+		super.deallocatePesForAllVms();
+	}
+	
 	protected SDNVm getVm(String vmId) {
 		return (SDNVm) vmMap.get(vmId);
 	}
@@ -165,7 +383,7 @@ public class VmSchedulerTimeSharedOverSubscriptionDynamicVM extends VmSchedulerT
 	
 	//*
 	private PowerUtilizationMonitor powerMonitor = new PowerUtilizationMonitor(new PowerUtilizationEnergyModelHostLinear());
-
+	
 	@Override
 	public void addUtilizationEntryTermination(double terminatedTime) {
 		powerMonitor.addPowerConsumption(terminatedTime, getCPUUtilization());
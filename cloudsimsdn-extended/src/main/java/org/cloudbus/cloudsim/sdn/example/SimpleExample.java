@@ -19,6 +19,7 @@ import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Storage;
 import org.cloudbus.cloudsim.VmAllocationPolicy;
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.sdn.CloudSimEx;
 import org.cloudbus.cloudsim.sdn.HostFactory;
 import org.cloudbus.cloudsim.sdn.HostFactorySimple;
 import org.cloudbus.cloudsim.sdn.SDNBroker;
@@ -108,7 +109,7 @@ public class SimpleExample {
       int num_user = 1; // number of cloud users
       Calendar calendar = Calendar.getInstance();
       boolean trace_flag = false; // mean trace events
-      CloudSim.init(num_user, calendar, trace_flag);
+      CloudSimEx.init(num_user, calendar, trace_flag);
 
       VmAllocationPolicyFactory vmAllocationFac = null;
       NetworkOperatingSystem nos = new NetworkOperatingSystemSimple();
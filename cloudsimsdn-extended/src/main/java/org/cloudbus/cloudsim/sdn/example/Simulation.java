@@ -78,7 +78,7 @@ public class Simulation {
       int num_user = 1; // number of cloud users
       Calendar calendar = Calendar.getInstance();
       boolean trace_flag = false; // mean trace events
-      CloudSim.init(num_user, calendar, trace_flag);
+      CloudSimEx.init(num_user, calendar, trace_flag);
 
       VmAllocationPolicyFactory vmAllocationFac = null;
       LinkSelectionPolicy ls = null;
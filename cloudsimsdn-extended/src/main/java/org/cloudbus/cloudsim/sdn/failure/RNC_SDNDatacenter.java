@@ -192,8 +192,9 @@ public class RNC_SDNDatacenter extends SDNDatacenter {
     } else {
       Log.printLine(CloudSim.clock() + ": Warning - Failed to activate backup VM for " + sourceVm.getName());
 
-      totalCloudletsFailed += sourceVm.getCloudletScheduler().getCloudletExecList().size() +
-          sourceVm.getCloudletScheduler().getCloudletWaitingList().size();
+      CloudletScheduler scheduler = getUpdatedCloudletScheduler(sourceVm);
+      totalCloudletsFailed += scheduler.getCloudletExecList().size() +
+          scheduler.getCloudletWaitingList().size();
     }
   }
 
@@ -248,8 +249,8 @@ public class RNC_SDNDatacenter extends SDNDatacenter {
 
         totalProcessingDelay += CloudSim.clock() - cl.getSubmissionTime();
 
-        vm.getCloudletScheduler().cloudletCancel(cl.getCloudletId());
-        backupVm.getCloudletScheduler().cloudletSubmit(clonedCloudlet);
+        cancelCloudletInVm(vm, cl.getCloudletId());
+        submitCloudletToVm(backupVm, clonedCloudlet);
       }
 
       return;
@@ -426,6 +427,7 @@ public class RNC_SDNDatacenter extends SDNDatacenter {
   }
 
   protected boolean processVmCreateEvent(SDNVm vm, Host targetHost, boolean ack) {
+    beforeHostChange(targetHost);
     boolean result = getVmAllocationPolicy().allocateHostForVm(vm, targetHost);
 
     if (ack) {
@@ -454,6 +456,7 @@ public class RNC_SDNDatacenter extends SDNDatacenter {
 
       vm.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(vm).getVmScheduler()
           .getAllocatedMipsForVm(vm));
+      afterHostChange(vm.getHost());
     }
 
     return result;
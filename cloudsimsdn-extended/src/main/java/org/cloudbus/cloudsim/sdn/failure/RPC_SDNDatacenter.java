@@ -267,7 +267,7 @@ public class RPC_SDNDatacenter extends SDNDatacenter {
       return;
     }
 
-    List<? extends ResCloudlet> cloudlets = vm.getCloudletScheduler().getCloudletExecList();
+    List<? extends ResCloudlet> cloudlets = getUpdatedCloudletScheduler(vm).getCloudletExecList();
     Map<Integer, Double> vmCheckpoints = checkpointProgress.getOrDefault(vmName, new HashMap<>());
 
     for (ResCloudlet cl : cloudlets) {
@@ -346,8 +346,8 @@ public class RPC_SDNDatacenter extends SDNDatacenter {
         clonedCloudlet.setVmId(backupVm.getId());
         clonedCloudlet.setUserId(cl.getUserId());
 
-        vm.getCloudletScheduler().cloudletCancel(cl.getCloudletId());
-        backupVm.getCloudletScheduler().cloudletSubmit(clonedCloudlet);
+        cancelCloudletInVm(vm, cl.getCloudletId());
+        submitCloudletToVm(backupVm, clonedCloudlet);
       }
 
       return;
@@ -524,6 +524,7 @@ public class RPC_SDNDatacenter extends SDNDatacenter {
   }
 
   protected boolean processVmCreateEvent(SDNVm vm, Host targetHost, boolean ack) {
+    beforeHostChange(targetHost);
     boolean result = getVmAllocationPolicy().allocateHostForVm(vm, targetHost);
 
     if (ack) {
@@ -552,6 +553,7 @@ public class RPC_SDNDatacenter extends SDNDatacenter {
 
       vm.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(vm).getVmScheduler()
           .getAllocatedMipsForVm(vm));
+      afterHostChange(vm.getHost());
     }
 
     return result;
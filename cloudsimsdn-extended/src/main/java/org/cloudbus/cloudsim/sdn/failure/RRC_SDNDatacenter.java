@@ -210,8 +210,9 @@ public class RRC_SDNDatacenter extends SDNDatacenter {
           double downtime = CloudSim.clock() - failureTime;
           totalServiceDowntime += downtime + VM_RECOVERY_DELAY;
 
-          int affectedCloudlets = sourceVm.getCloudletScheduler().getCloudletExecList().size() +
-              sourceVm.getCloudletScheduler().getCloudletWaitingList().size();
+          CloudletScheduler scheduler = getUpdatedCloudletScheduler(sourceVm);
+          int affectedCloudlets = scheduler.getCloudletExecList().size() +
+              scheduler.getCloudletWaitingList().size();
 
           if (affectedCloudlets > 0) {
             totalProcessingDelay += (downtime * affectedCloudlets);
@@ -236,13 +237,29 @@ public class RRC_SDNDatacenter extends SDNDatacenter {
   protected void processVmCreate(SimEvent ev, boolean ack) {
     SDNVm sdnVm = (SDNVm) ev.getData();
 
+    super.processVmCreate(ev, ack);
+
+    scheduleCheckpoint(sdnVm);
+  }
+
+  @Override
+  protected void processVmCreateBulk(SimEvent ev) {
+    @SuppressWarnings("unchecked")
+    List<SDNVm> vms = (List<SDNVm>) ev.getData();
+
+    super.processVmCreateBulk(ev);
+
+    for (SDNVm sdnVm : vms) {
+      scheduleCheckpoint(sdnVm);
+    }
+  }
+
+  private void scheduleCheckpoint(SDNVm sdnVm) {
     String vmName = sdnVm.getName();
     String hostName = vmAllocation.getVmToHostMapping().get(vmName);
     Integer hostId = hostNameToId.get(hostName);
     SDNHost sdnHost = (SDNHost) HostList.getById(getHostList(), hostId);
 
-    super.processVmCreate(ev, ack);
-
     double checkpointInterval = Math.sqrt(2 * sdnHost.getMtbf() * Configuration.CHECKPOINT_OVERHEAD);
 
     sdnHost.setCheckpointInterval(checkpointInterval);
@@ -257,7 +274,7 @@ public class RRC_SDNDatacenter extends SDNDatacenter {
       return;
     }
 
-    List<? extends ResCloudlet> cloudlets = vm.getCloudletScheduler().getCloudletExecList();
+    List<? extends ResCloudlet> cloudlets = getUpdatedCloudletScheduler(vm).getCloudletExecList();
     Map<Integer, Long> vmCheckpoints = checkpointProgress.getOrDefault(vmName, new HashMap<>());
 
     for (ResCloudlet cl : cloudlets) {
@@ -335,9 +352,9 @@ public class RRC_SDNDatacenter extends SDNDatacenter {
 
         totalProcessingDelay += CloudSim.clock() - vmLastCheckpointTime.getOrDefault(vm.getName(), 0.0);
 
-        vm.getCloudletScheduler().cloudletCancel(cl.getCloudletId());
+        cancelCloudletInVm(vm, cl.getCloudletId());
 
-        backupVm.getCloudletScheduler().cloudletSubmit(clonedCloudlet);
+        submitCloudletToVm(backupVm, clonedCloudlet);
       }
 
       return;
@@ -514,6 +531,7 @@ public class RRC_SDNDatacenter extends SDNDatacenter {
   }
 
   protected boolean processVmCreateEvent(SDNVm vm, Host targetHost, boolean ack) {
+    beforeHostChange(targetHost);
     boolean result = getVmAllocationPolicy().allocateHostForVm(vm, targetHost);
 
     if (ack) {
@@ -542,6 +560,7 @@ public class RRC_SDNDatacenter extends SDNDatacenter {
 
       vm.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(vm).getVmScheduler()
           .getAllocatedMipsForVm(vm));
+      afterHostChange(vm.getHost());
     }
 
     return result;
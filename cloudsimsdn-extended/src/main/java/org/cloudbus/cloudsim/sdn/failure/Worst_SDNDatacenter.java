@@ -157,7 +157,10 @@ public class Worst_SDNDatacenter extends SDNDatacenter {
 
     vmStatus.put(vm.getName(), VmStatus.FAILED);
 
+    Host host = vm.getHost();
+    beforeHostChange(host);
     vmAllocation.deallocateHostForVm(vm);
+    afterHostChange(host);
   }
 
   private void processHostRecovery(int hostId) {
@@ -205,6 +208,7 @@ public class Worst_SDNDatacenter extends SDNDatacenter {
     Log.printLine(CloudSim.clock() + ": Service downtime for VM " + vmName +
         " was " + String.format("%.3f", downtime) + " seconds");
 
+    beforeHostChange(host);
     boolean result = getVmAllocationPolicy().allocateHostForVm(vm, host);
 
     if (result) {
@@ -218,12 +222,13 @@ public class Worst_SDNDatacenter extends SDNDatacenter {
 
       vm.updateVmProcessing(CloudSim.clock(),
           getVmAllocationPolicy().getHost(vm).getVmScheduler().getAllocatedMipsForVm(vm));
+      afterHostChange(host);
 
       List<Cloudlet> cancelledCloudlets = vmCloudletMap.getOrDefault(vmName, new ArrayList<>());
 
       for (Cloudlet cloudlet : cancelledCloudlets) {
         totalProcessingDelay += downtime;
-        vm.getCloudletScheduler().cloudletSubmit(cloudlet);
+        submitCloudletToVm(vm, cloudlet);
       }
 
       vmCloudletMap.remove(vmName);
@@ -277,7 +282,7 @@ public class Worst_SDNDatacenter extends SDNDatacenter {
 
         totalProcessingDelay += CloudSim.clock() - cl.getSubmissionTime();
 
-        vm.getCloudletScheduler().cloudletCancel(cl.getCloudletId());
+        cancelCloudletInVm(vm, cl.getCloudletId());
 
         vmCloudletMap.computeIfAbsent(vm.getName(), k -> new ArrayList<>()).add(clonedCloudlet);
       }
@@ -0,0 +1,332 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn.nos;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.cloudbus.cloudsim.sdn.physicalcomponents.Link;
+import org.cloudbus.cloudsim.sdn.physicalcomponents.Node;
+import org.cloudbus.cloudsim.sdn.virtualcomponents.Channel;
+
+/**
+ * Max-min fair (water-filling) bandwidth allocation over the bipartite graph of
+ * link directions and channels.
+ * Changes (new channel, removed channel, new requested bandwidth, new route) only mark
+ * channels or link directions as dirty. {@link #reallocate()} recomputes the shares
+ * for the connected components touched by the dirty elements, and returns only the
+ * channels whose rate actually changed.
+ *
+ * Dedicated channels (chId != -1) reserve their requested bandwidth, scaled down if the requests
+ * exceed a link (see {@link Link#getDedicatedChannelAdjustFactor(Node)}).
+ * If the channel is allowed to use more than it requested ({@link Channel#isAllocateMoreAvailableBw()}),
+ * the reservation is a floor and the channel takes part in the water-filling; otherwise it gets exactly the reservation.
+ * Default channels (chId == -1) share the rest of the capacity max-min fairly.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class BandwidthAllocator {
+	// Rates closer than this (relative) are treated as unchanged
+	private static final double RATE_TOLERANCE = 1e-9;
+
+	private Set<Channel> dirtyChannels = new LinkedHashSet<Channel>();
+	private Set<Link> dirtyUpLinks = new LinkedHashSet<Link>();
+	private Set<Link> dirtyDownLinks = new LinkedHashSet<Link>();
+
+	/**
+	 * Marks a channel whose route or requested bandwidth is changed, or which is newly added.
+	 */
+	public void markChanged(Channel ch) {
+		dirtyChannels.add(ch);
+	}
+
+	/**
+	 * Marks all link directions along the channel route, e.g. when the channel leaves them.
+	 */
+	public void markRouteChanged(Channel ch) {
+		markRouteChanged(ch.getNodes(), ch.getLinks());
+	}
+
+	public void markRouteChanged(List<Node> nodes, List<Link> links) {
+		for(int i=0; i<links.size(); i++) {
+			Link link = links.get(i);
+			if(link.isUplink(nodes.get(i)))
+				dirtyUpLinks.add(link);
+			else
+				dirtyDownLinks.add(link);
+		}
+	}
+
+	/**
+	 * Forget a removed channel. Its links should be marked with {@link #markRouteChanged(Channel)}.
+	 */
+	public void remove(Channel ch) {
+		dirtyChannels.remove(ch);
+	}
+
+	public boolean hasChanges() {
+		return !dirtyChannels.isEmpty() || !dirtyUpLinks.isEmpty() || !dirtyDownLinks.isEmpty();
+	}
+
+	/**
+	 * Recomputes max-min fair shares for the components touched since the last call.
+	 *
+	 * @return channels whose allocated bandwidth should change, with the new bandwidth.
+	 */
+	public Map<Channel, Double> reallocate() {
+		Map<Channel, Double> changed = new LinkedHashMap<Channel, Double>();
+		if(!hasChanges())
+			return changed;
+
+		Component c = new Component();
+		for(Channel ch:dirtyChannels) {
+			if(ch.isOnLinks())
+				c.addChannel(ch);
+		}
+		for(Link l:dirtyUpLinks)
+			c.addLinkDirection(l, true);
+		for(Link l:dirtyDownLinks)
+			c.addLinkDirection(l, false);
+		dirtyChannels.clear();
+		dirtyUpLinks.clear();
+		dirtyDownLinks.clear();
+
+		c.expand();
+		double[] rates = c.waterFill();
+
+		for(int i=0; i<c.channels.size(); i++) {
+			Channel ch = c.channels.get(i);
+			double oldRate = ch.getAllocatedBandwidth();
+			if(Math.abs(rates[i] - oldRate) > RATE_TOLERANCE * Math.max(1.0, Math.abs(oldRate))) {
+				changed.put(ch, rates[i]);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Channels and link directions reachable from the dirty elements.
+	 * Link directions are numbered densely; channel i uses linkDirs of channelHops.get(i).
+	 */
+	private static class Component {
+		List<Channel> channels = new ArrayList<Channel>();
+		Map<Channel, Integer> channelIndex = new HashMap<Channel, Integer>();
+		List<int[]> channelHops = new ArrayList<int[]>();
+
+		List<Link> links = new ArrayList<Link>();
+		List<Node> linkFrom = new ArrayList<Node>();
+		Map<Link, Integer> upIndex = new HashMap<Link, Integer>();
+		Map<Link, Integer> downIndex = new HashMap<Link, Integer>();
+
+		ArrayDeque<Integer> pendingChannels = new ArrayDeque<Integer>();
+		ArrayDeque<Integer> pendingLinks = new ArrayDeque<Integer>();
+
+		int addChannel(Channel ch) {
+			Integer idx = channelIndex.get(ch);
+			if(idx != null)
+				return idx;
+			idx = channels.size();
+			channels.add(ch);
+			channelIndex.put(ch, idx);
+			channelHops.add(null);
+			pendingChannels.add(idx);
+			return idx;
+		}
+
+		int addLinkDirection(Link link, boolean isUp) {
+			Map<Link, Integer> index = isUp ? upIndex : downIndex;
+			Integer idx = index.get(link);
+			if(idx != null)
+				return idx;
+			idx = links.size();
+			links.add(link);
+			linkFrom.add(isUp ? link.getLowOrder() : link.getHighOrder());
+			index.put(link, idx);
+			pendingLinks.add(idx);
+			return idx;
+		}
+
+		// Breadth-first search over channel <-> link direction
+		void expand() {
+			while(!pendingChannels.isEmpty() || !pendingLinks.isEmpty()) {
+				while(!pendingChannels.isEmpty()) {
+					int i = pendingChannels.poll();
+					Channel ch = channels.get(i);
+					List<Node> nodes = ch.getNodes();
+					List<Link> chLinks = ch.getLinks();
+					int[] hops = new int[chLinks.size()];
+					for(int h=0; h<hops.length; h++) {
+						Link link = chLinks.get(h);
+						hops[h] = addLinkDirection(link, link.isUplink(nodes.get(h)));
+					}
+					channelHops.set(i, hops);
+				}
+				while(!pendingLinks.isEmpty()) {
+					int j = pendingLinks.poll();
+					for(Channel ch:links.get(j).getChannels(linkFrom.get(j))) {
+						addChannel(ch);
+					}
+				}
+			}
+		}
+
+		double[] waterFill() {
+			int n = channels.size();
+			int m = links.size();
+
+			double[] rates = new double[n];
+			double[] floors = new double[n];
+			boolean[] frozen = new boolean[n];
+
+			double[] remaining = new double[m];
+			int[] unfrozenCount = new int[m];
+			int[] positiveFloorCount = new int[m];
+			int[] version = new int[m];
+			boolean[] saturated = new boolean[m];
+			List<List<Integer>> linkChannels = new ArrayList<List<Integer>>(m);
+
+			for(int j=0; j<m; j++) {
+				remaining[j] = links.get(j).getBw(linkFrom.get(j));
+				linkChannels.add(new ArrayList<Integer>());
+			}
+
+			for(int i=0; i<n; i++) {
+				Channel ch = channels.get(i);
+				int[] hops = channelHops.get(i);
+				for(int j:hops)
+					linkChannels.get(j).add(i);
+
+				if(ch.getChId() == -1)
+					continue;
+
+				// Dedicated channel: reserve the requested bandwidth, adjusted if the link is over-requested.
+				double factor = 1.0;
+				List<Node> nodes = ch.getNodes();
+				List<Link> chLinks = ch.getLinks();
+				for(int h=0; h<chLinks.size(); h++) {
+					factor = Math.min(factor, chLinks.get(h).getDedicatedChannelAdjustFactor(nodes.get(h)));
+				}
+				double reserved = ch.getRequestedBandwidth() * factor;
+
+				if(ch.isAllocateMoreAvailableBw()) {
+					floors[i] = reserved;
+				}
+				else {
+					rates[i] = reserved;
+					frozen[i] = true;
+					for(int j:hops)
+						remaining[j] -= reserved;
+				}
+			}
+
+			for(int i=0; i<n; i++) {
+				if(frozen[i])
+					continue;
+				if(channelHops.get(i).length == 0) {
+					// No link to share (should not happen). Keep the current rate.
+					rates[i] = channels.get(i).getAllocatedBandwidth();
+					frozen[i] = true;
+					continue;
+				}
+				for(int j:channelHops.get(i)) {
+					unfrozenCount[j]++;
+					if(floors[i] > 0)
+						positiveFloorCount[j]++;
+				}
+			}
+
+			// Min-heap of (level at which the link direction saturates, link, version)
+			PriorityQueue<double[]> heap = new PriorityQueue<double[]>(Math.max(1, m), (a, b) -> {
+				int cmp = Double.compare(a[0], b[0]);
+				return cmp != 0 ? cmp : Double.compare(a[1], b[1]);
+			});
+			for(int j=0; j<m; j++) {
+				if(unfrozenCount[j] > 0)
+					heap.add(new double[] {saturationLevel(j, remaining, unfrozenCount, positiveFloorCount, linkChannels, frozen, floors), j, version[j]});
+			}
+
+			while(!heap.isEmpty()) {
+				double[] top = heap.poll();
+				int j = (int) top[1];
+				if(saturated[j] || (int) top[2] != version[j] || unfrozenCount[j] == 0)
+					continue;	// stale entry
+
+				double level = top[0];
+				saturated[j] = true;
+
+				Set<Integer> touched = new LinkedHashSet<Integer>();
+				for(int i:linkChannels.get(j)) {
+					if(frozen[i])
+						continue;
+					frozen[i] = true;
+					rates[i] = Math.max(floors[i], level);
+					for(int k:channelHops.get(i)) {
+						remaining[k] -= rates[i];
+						unfrozenCount[k]--;
+						if(floors[i] > 0)
+							positiveFloorCount[k]--;
+						if(k != j)
+							touched.add(k);
+					}
+				}
+
+				for(int k:touched) {
+					if(saturated[k])
+						continue;
+					version[k]++;
+					if(unfrozenCount[k] > 0)
+						heap.add(new double[] {saturationLevel(k, remaining, unfrozenCount, positiveFloorCount, linkChannels, frozen, floors), k, version[k]});
+				}
+			}
+			return rates;
+		}
+
+		/*
+		 * The common water level at which link direction j is full:
+		 * remaining[j] = sum over unfrozen channels of max(floor, level).
+		 */
+		private double saturationLevel(int j, double[] remaining, int[] unfrozenCount, int[] positiveFloorCount,
+				List<List<Integer>> linkChannels, boolean[] frozen, double[] floors) {
+			if(positiveFloorCount[j] == 0)
+				return remaining[j] / unfrozenCount[j];
+
+			double[] f = new double[unfrozenCount[j]];
+			int k = 0;
+			for(int i:linkChannels.get(j)) {
+				if(!frozen[i])
+					f[k++] = floors[i];
+			}
+			Arrays.sort(f);
+
+			double floorSumAbove = 0;
+			for(double x:f)
+				floorSumAbove += x;
+
+			// With the lowest 'cnt' channels on the level and the others at their floors
+			for(int cnt=1; cnt<=f.length; cnt++) {
+				floorSumAbove -= f[cnt-1];
+				double level = (remaining[j] - floorSumAbove) / cnt;
+				double upper = (cnt < f.length) ? f[cnt] : Double.POSITIVE_INFINITY;
+				if(level >= f[cnt-1] && level <= upper)
+					return level;
+			}
+			// Floors alone exceed the capacity: every channel stays at its floor.
+			return f[0];
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn.nos;
+
+import java.util.Arrays;
+
+import org.cloudbus.cloudsim.sdn.virtualcomponents.Channel;
+
+/**
+ * Indexed min-heap of channels ordered by the absolute simulation time at which
+ * the next transmission in the channel finishes.
+ * A channel is re-keyed only when its bandwidth or its set of transmissions changes,
+ * so NOS can find the channels due for processing without walking the whole channel table.
+ * The position of each channel in the heap is kept in the channel itself (see {@link Channel#getCompletionQueueIndex()}).
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class ChannelCompletionQueue {
+	private Channel[] heap = new Channel[16];
+	private double[] finishTimes = new double[16];
+	private long[] sequences = new long[16];	// Insertion order, breaks ties deterministically
+	private int size = 0;
+	private long nextSequence = 0;
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(Channel ch) {
+		int i = ch.getCompletionQueueIndex();
+		return i >= 0 && i < size && heap[i] == ch;
+	}
+
+	/**
+	 * Inserts the channel with the given finish time, or moves it if it is already in the queue.
+	 */
+	public void update(Channel ch, double finishTime) {
+		if(contains(ch)) {
+			int i = ch.getCompletionQueueIndex();
+			double old = finishTimes[i];
+			finishTimes[i] = finishTime;
+			if(finishTime < old)
+				siftUp(i);
+			else if(finishTime > old)
+				siftDown(i);
+			return;
+		}
+
+		if(size == heap.length) {
+			int newLength = heap.length * 2;
+			heap = Arrays.copyOf(heap, newLength);
+			finishTimes = Arrays.copyOf(finishTimes, newLength);
+			sequences = Arrays.copyOf(sequences, newLength);
+		}
+		heap[size] = ch;
+		finishTimes[size] = finishTime;
+		sequences[size] = nextSequence++;
+		ch.setCompletionQueueIndex(size);
+		size++;
+		siftUp(size-1);
+	}
+
+	public boolean remove(Channel ch) {
+		if(!contains(ch))
+			return false;
+
+		int i = ch.getCompletionQueueIndex();
+		removeAt(i);
+		return true;
+	}
+
+	public Channel peek() {
+		return size == 0 ? null : heap[0];
+	}
+
+	public double peekFinishTime() {
+		return size == 0 ? Double.POSITIVE_INFINITY : finishTimes[0];
+	}
+
+	public Channel poll() {
+		if(size == 0)
+			return null;
+
+		Channel ch = heap[0];
+		removeAt(0);
+		return ch;
+	}
+
+	public void clear() {
+		for(int i=0; i<size; i++) {
+			heap[i].setCompletionQueueIndex(-1);
+			heap[i] = null;
+		}
+		size = 0;
+	}
+
+	private void removeAt(int i) {
+		Channel removed = heap[i];
+		int last = size - 1;
+		if(i != last) {
+			move(last, i);
+			heap[last] = null;
+			size--;
+			siftDown(i);
+			siftUp(i);
+		}
+		else {
+			heap[last] = null;
+			size--;
+		}
+		removed.setCompletionQueueIndex(-1);
+	}
+
+	private boolean less(int a, int b) {
+		if(finishTimes[a] != finishTimes[b])
+			return finishTimes[a] < finishTimes[b];
+		return sequences[a] < sequences[b];
+	}
+
+	private void siftUp(int i) {
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			if(!less(i, parent))
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while(true) {
+			int left = 2 * i + 1;
+			if(left >= size)
+				break;
+			int smallest = left;
+			int right = left + 1;
+			if(right < size && less(right, left))
+				smallest = right;
+			if(!less(smallest, i))
+				break;
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void move(int from, int to) {
+		heap[to] = heap[from];
+		finishTimes[to] = finishTimes[from];
+		sequences[to] = sequences[from];
+		heap[to].setCompletionQueueIndex(to);
+	}
+
+	private void swap(int a, int b) {
+		Channel ch = heap[a];
+		double t = finishTimes[a];
+		long s = sequences[a];
+
+		heap[a] = heap[b];
+		finishTimes[a] = finishTimes[b];
+		sequences[a] = sequences[b];
+		heap[a].setCompletionQueueIndex(a);
+
+		heap[b] = ch;
+		finishTimes[b] = t;
+		sequences[b] = s;
+		ch.setCompletionQueueIndex(b);
+	}
+}
@@ -1,18 +1,25 @@
 package org.cloudbus.cloudsim.sdn.nos;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.sdn.Configuration;
+import org.cloudbus.cloudsim.sdn.TimeoutWheel;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.Link;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.Node;
+import org.cloudbus.cloudsim.sdn.physicalcomponents.PathCache;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.SDNHost;
 import org.cloudbus.cloudsim.sdn.sfc.ServiceFunctionForwarder;
 import org.cloudbus.cloudsim.sdn.virtualcomponents.Channel;
 import org.cloudbus.cloudsim.sdn.virtualcomponents.SDNVm;
 import org.cloudbus.cloudsim.sdn.virtualcomponents.VirtualNetworkMapper;
+import org.cloudbus.cloudsim.sdn.workload.Transmission;
 
 public class ChannelManager {
 	protected NetworkOperatingSystem nos = null;
@@ -20,9 +27,37 @@ public class ChannelManager {
 	protected ServiceFunctionForwarder sfcForwarder = null;
 	
 	// Processing requests
-	protected HashMap<String, Channel> channelTable = new HashMap<String, Channel>();	// getKey(fromVM, toVM, flowID) -> Channel
+	protected ChannelTable channelTable = new ChannelTable();	// getKey(fromVM, toVM, flowID) -> Channel
 	protected List<Channel> tempRemovedChannels = new LinkedList<Channel>();
 	
+	// All channels in channelTable, ordered by the absolute time of their next transmission completion
+	protected ChannelCompletionQueue completionQueue = new ChannelCompletionQueue();
+	
+	// Recomputes bandwidth shares only for channels affected by changes
+	protected BandwidthAllocator bwAllocator = new BandwidthAllocator();
+	
+	// Deadlines of transmissions in flight (only if Configuration.TIME_OUT is set)
+	protected TimeoutWheel<TransmissionTimeout> transmissionTimeouts = 
+			new TimeoutWheel<TransmissionTimeout>(TimeoutWheel.getTickSize(Configuration.TIME_OUT));
+	// Wheel entries of the transmissions in flight, cancelled when they arrive
+	private Map<Transmission, TimeoutWheel.Timeout<TransmissionTimeout>> transmissionTimeoutEntries =
+			new IdentityHashMap<Transmission, TimeoutWheel.Timeout<TransmissionTimeout>>();
+	
+	// Delays added by Configuration.CHANNEL_COMPLETION_EPSILON: number of delayed completions, total and max delay
+	private long numQuantizedCompletions = 0;
+	private double totalQuantizationDelay = 0;
+	private double maxQuantizationDelay = 0;
+	
+	protected static class TransmissionTimeout {
+		final Channel channel;
+		final Transmission transmission;
+		
+		TransmissionTimeout(Channel channel, Transmission transmission) {
+			this.channel = channel;
+			this.transmission = transmission;
+		}
+	}
+	
 	public ChannelManager(NetworkOperatingSystem nos, VirtualNetworkMapper vnMapper,
 			ServiceFunctionForwarder sfcForwarder) {
 		this.nos = nos;
@@ -34,13 +69,9 @@ public class ChannelManager {
 		// For dynamic routing, rebuild forwarding table (select which link to use).
 		vnMapper.updateDynamicForwardingTableRec(srcNode, src, dst, flowId, false);
 		
-		List<Node> nodes = new ArrayList<Node>();
-		List<Link> links = new ArrayList<Link>();
-		
-		Node origin = srcNode;
-		Node dest = origin.getVMRoute(src, dst, flowId);
+		PathCache.Path path = vnMapper.getPath(src, dst, flowId, srcNode);
 		
-		if(dest==null) {
+		if(path==null) {
 			throw new IllegalArgumentException("createChannel(): dest is null, cannot create channel! " +
 					NetworkOperatingSystem.findVmGlobal(src)+"->" + 
 					NetworkOperatingSystem.findVmGlobal(dst)+"|"+flowId);
@@ -54,29 +85,16 @@ public class ChannelManager {
 				throw new RuntimeException("reqBW cannot be zero for dedicated channels!!"+flowId);
 		}
 		
-		nodes.add(origin);
+		List<Node> nodes = path.getNodes();
+		List<Link> links = path.getLinks();
 		
 		// Find the lowest available bandwidth along the link.
-		while(true) {
-			Link link = origin.getLinkTo(dest);
-			if(link == null)
-				throw new IllegalArgumentException("Link is NULL for srcNode:"+origin+" -> dstNode:"+dest);
-			
-			//Log.printLine(CloudSim.clock() + ": createChannel() :(" +getKey(src,dst,flowId)+"): "+link);
-			
-			links.add(link);
-			nodes.add(dest);
-			
-			if(lowestBw > link.getFreeBandwidth(origin)) {
-				lowestBw = link.getFreeBandwidth(origin);
+		for(int i=0; i<links.size(); i++) {
+			Link link = links.get(i);
+			if(lowestBw > link.getFreeBandwidth(nodes.get(i))) {
+				lowestBw = link.getFreeBandwidth(nodes.get(i));
 			}
-		
-			if(dest instanceof SDNHost)
-				break;
-			
-			origin = dest;
-			dest = origin.getVMRoute(src, dst, flowId);
-		} 
+		}
 		
 		// If currently free bandwidth is less than required one.
 		if(flowId != -1 && lowestBw < reqBw) {
@@ -87,6 +105,7 @@ public class ChannelManager {
 		
 		Channel channel=new Channel(flowId, src, dst, nodes, links, reqBw, 
 				(SDNVm)NetworkOperatingSystem.findVmGlobal(src), (SDNVm)NetworkOperatingSystem.findVmGlobal(dst));
+		channel.setPathId(path.getId());
 		//Log.printLine(CloudSim.clock() + ": " + getName() + ".createChannel:"+channel);
 	
 		return channel;
@@ -95,11 +114,14 @@ public class ChannelManager {
 	public void addChannel(int src, int dst, int chId, Channel ch) {
 			//System.err.println("NOS.addChannel:"+getKey(src, dst, chId));
 			
-			this.channelTable.put(getChannelKey(src, dst, chId), ch);
 			ch.initialize();
+			this.channelTable.put(ch);
 			
+			// Tentative bandwidth until all channels are adjusted
 			ch.adjustDedicatedBandwidthAlongLink();
 			ch.adjustSharedBandwidthAlongLink();
+			scheduleChannel(ch);
+			bwAllocator.markChanged(ch);
 			
 			nos.sendAdjustAllChannelEvent();		
 	//		allChannels.add(ch);
@@ -107,52 +129,44 @@ public class ChannelManager {
 
 	public Channel findChannel(int from, int to, int channelId) {
 		// check if there is a pre-configured channel for this application
-		Channel channel=channelTable.get(getChannelKey(from, to, channelId));
-	
-		if (channel == null) {
-			//there is no channel for specific flow, find the default channel for this link
-			channel=channelTable.get(getChannelKey(from,to));
-		}
-		return channel;
+		return channelTable.get(from, to, channelId);
 	}
 	
 	public List<Channel> findAllChannels(int vmId) {
-		List<Channel> allChannels = new ArrayList<>();
-		
-		for(Channel ch:channelTable.values()) {
-			if(ch.getSrcId() == vmId
-					|| ch.getDstId() == vmId) {
-				allChannels.add(ch);
-			}
-		}
-		
-		return allChannels;
+		return new ArrayList<Channel>(channelTable.getChannels(vmId));
+	}
+	
+	public List<Channel> findAllChannels(Link link) {
+		return new ArrayList<Channel>(channelTable.getChannels(link));
 	}
 
 	private void updateChannel() {
-		List<String> removeCh = new ArrayList<String>();  
-		for(String key:this.channelTable.keySet()) {
-			Channel ch = this.channelTable.get(key);
+		List<Channel> removeCh = new ArrayList<Channel>();  
+		for(Channel ch:this.channelTable.values()) {
 			if(ch.getActiveTransmissionNum() == 0) {
 				// No more job in channel. Delete
-				removeCh.add(key);
+				removeCh.add(ch);
 			}
 		}
 		
-		for(String key:removeCh) {
-			removeChannel(key);
+		for(Channel ch:removeCh) {
+			removeChannel(ch);
 		}
 	}
 	
 	public Channel removeChannel(int srcVm, int dstVm, int flowId) {
-		if(findChannel(srcVm, dstVm, flowId) == null)
+		Channel ch = findChannel(srcVm, dstVm, flowId);
+		if(ch == null)
 			return null;
-		return removeChannel(getChannelKey(srcVm, dstVm, flowId));
+		return removeChannel(ch);
 	}
 	
-	private Channel removeChannel(String key) {
-		//System.err.println("NOS.removeChannel:"+key);
-		Channel ch = this.channelTable.remove(key);
+	private Channel removeChannel(Channel ch) {
+		//System.err.println("NOS.removeChannel:"+ch);
+		this.channelTable.remove(ch.getSrcId(), ch.getDstId(), ch.getChId());
+		completionQueue.remove(ch);
+		bwAllocator.remove(ch);
+		bwAllocator.markRouteChanged(ch);
 		ch.terminate();
 		nos.sendAdjustAllChannelEvent();
 		tempRemovedChannels.add(ch);
@@ -164,38 +178,84 @@ public class ChannelManager {
 	}
 	
 	public boolean updateChannelBandwidth(int src, int dst, int flowId, long newBandwidth) {
-		Channel ch = this.channelTable.get(getChannelKey(src, dst, flowId));
+		Channel ch = this.channelTable.get(src, dst, flowId);
 		if(ch != null) {
 			ch.updateRequestedBandwidth(newBandwidth);
+			bwAllocator.markChanged(ch);
 			return true;
 		}
 		
 		return false;
 	}
 	
-	public void adjustAllChannel() {
+	/**
+	 * Re-adjusts the bandwidth of channels after channels are added, removed or changed.
+	 * @return true if bandwidth of any channel is changed.
+	 */
+	public boolean adjustAllChannel() {
+		boolean isChanged = false;
+		
+		if(Configuration.MAX_MIN_FAIR_BANDWIDTH_ALLOCATION) {
+			Map<Channel, Double> changedChannels = bwAllocator.reallocate();
+			for(Map.Entry<Channel, Double> e:changedChannels.entrySet()) {
+				Channel ch = e.getKey();
+				ch.changeBandwidth(e.getValue());
+				// Channel BW is changed. Its next finish time is changed as well.
+				scheduleChannel(ch);
+				isChanged = true;
+			}
+			return isChanged;
+		}
+		
 		for(Channel ch:this.channelTable.values()) {
 			if(ch.adjustDedicatedBandwidthAlongLink()) {
-				// Channel BW is changed. send event.
+				// Channel BW is changed. Its next finish time is changed as well.
+				scheduleChannel(ch);
+				isChanged = true;
 			}
 		}
 		
 		for(Channel ch:this.channelTable.values()) {
 			if(ch.adjustSharedBandwidthAlongLink()) {
-				// Channel BW is changed. send event.
+				// Channel BW is changed. Its next finish time is changed as well.
+				scheduleChannel(ch);
+				isChanged = true;
 			}
 		}
+		return isChanged;
 	}
 	
-	public double nextFinishTime() {
-		double earliestEft = Double.POSITIVE_INFINITY;
-		for(Channel ch:channelTable.values()){
-			
-			double eft = ch.nextFinishTime();
-			if (eft<earliestEft){
-				earliestEft=eft;
-			}
+	/**
+	 * Puts the channel into the completion queue with its next finish time.
+	 * The channel must have been updated up to the current simulation time.
+	 */
+	protected void scheduleChannel(Channel ch) {
+		double finishTime;
+		if(ch.hasFinishedTransmissions()) {
+			// Finished transmissions are waiting for delivery: process at the next event.
+			finishTime = CloudSim.clock();
+		}
+		else if(ch.getActiveTransmissionNum() == 0) {
+			finishTime = Double.POSITIVE_INFINITY;
+		}
+		else {
+			finishTime = CloudSim.clock() + ch.nextFinishTime();
 		}
+		completionQueue.update(ch, finishTime);
+	}
+	
+	public void addTransmission(Channel ch, Transmission transmission) {
+		ch.addTransmission(transmission);
+		if(Configuration.TIME_OUT != Double.POSITIVE_INFINITY) {
+			double deadline = transmission.getPacket().getStartTime() + Configuration.TIME_OUT;
+			transmissionTimeoutEntries.put(transmission,
+					transmissionTimeouts.add(deadline, new TransmissionTimeout(ch, transmission)));
+		}
+		scheduleChannel(ch);
+	}
+	
+	public double nextFinishTime() {
+		double earliestEft = completionQueue.peekFinishTime() - CloudSim.clock();
 		
 		if(earliestEft == Double.POSITIVE_INFINITY) {
 			throw new IllegalArgumentException("NOS.nextFinishTime(): next finish time is infinite!");
@@ -208,6 +268,7 @@ public class ChannelManager {
 		boolean needSendEvent = false;
 		
 		LinkedList<Channel> completeChannels = new LinkedList<Channel>();
+		List<TransmissionTimeout> timeouts = expireTransmissionTimeouts();
 		
 		// Check every channel
 		for(Channel ch:channelTable.values()){
@@ -228,14 +289,141 @@ public class ChannelManager {
 			}
 		}
 		
+		// Transmissions passed their deadline, timed out after the update as in updateDuePacketProcessing()
+		if(!timeouts.isEmpty()) {
+			Set<Channel> listed = Collections.newSetFromMap(new IdentityHashMap<Channel, Boolean>());
+			listed.addAll(completeChannels);
+			for(TransmissionTimeout t:timeouts) {
+				if(t.channel.timeOutTransmission(t.transmission) && listed.add(t.channel))
+					completeChannels.add(t.channel);
+			}
+		}
+		
 		if(completeChannels.size() != 0) {
 			nos.processCompletePackets(completeChannels);
 			updateChannel();
 		}
+		
+		for(Channel ch:channelTable.values()) {
+			scheduleChannel(ch);
+		}
 
 		return needSendEvent;
 	}
 	
+	/**
+	 * Updates only the channels whose next transmission finishes by now,
+	 * instead of walking all channels in the table.
+	 * 
+	 * @return true if any channel still has transmissions to process.
+	 */
+	public boolean updateDuePacketProcessing() {
+		double dueTime = CloudSim.clock() + CloudSim.getMinTimeBetweenEvents();
+		List<Channel> dueChannels = new ArrayList<Channel>();
+		while(!completionQueue.isEmpty() && completionQueue.peekFinishTime() <= dueTime) {
+			if(Configuration.CHANNEL_COMPLETION_EPSILON > 0) {
+				// Only the rounding up to the window end, not the minimum event interval
+				double finishTime = completionQueue.peekFinishTime();
+				double windowEnd = NetworkOperatingSystem.getQuantizationWindowEnd(finishTime);
+				addQuantizationDelay(Math.min(CloudSim.clock(), windowEnd) - finishTime);
+			}
+			dueChannels.add(completionQueue.poll());
+		}
+		
+		// Transmissions passed their deadline. Completed ones are ignored when timed out.
+		List<TransmissionTimeout> timeouts = expireTransmissionTimeouts();
+		for(TransmissionTimeout t:timeouts) {
+			if(completionQueue.remove(t.channel))
+				dueChannels.add(t.channel);
+		}
+		
+		for(Channel ch:dueChannels) {
+			ch.updatePacketProcessing();
+		}
+		for(TransmissionTimeout t:timeouts) {
+			t.channel.timeOutTransmission(t.transmission);
+		}
+		
+		LinkedList<Channel> completeChannels = new LinkedList<Channel>();
+		for(Channel ch:dueChannels) {
+			if(ch.hasFinishedTransmissions()) {
+				completeChannels.add(ch);
+			}
+		}
+		
+		if(completeChannels.size() != 0) {
+			nos.processCompletePackets(completeChannels);
+		}
+		
+		for(Channel ch:dueChannels) {
+			if(ch.getActiveTransmissionNum() == 0) {
+				// No more job in channel. Delete
+				removeChannel(ch);
+			}
+			else {
+				scheduleChannel(ch);
+			}
+		}
+		
+		return !completionQueue.isEmpty();
+	}
+	
+	private List<TransmissionTimeout> expireTransmissionTimeouts() {
+		List<TransmissionTimeout> timeouts = transmissionTimeouts.expire(CloudSim.clock());
+		for(TransmissionTimeout t:timeouts)
+			transmissionTimeoutEntries.remove(t.transmission);
+		return timeouts;
+	}
+	
+	/**
+	 * Cancels the deadline of an arrived transmission, so the wheel does not keep it until then.
+	 */
+	public void removeTransmissionTimeout(Transmission transmission) {
+		TimeoutWheel.Timeout<TransmissionTimeout> entry = transmissionTimeoutEntries.remove(transmission);
+		if(entry != null)
+			transmissionTimeouts.cancel(entry);
+	}
+	
+	/**
+	 * Updates a single channel, e.g. before a new transmission changes its bandwidth share.
+	 * The channel is removed if it has no more transmissions.
+	 */
+	public void updatePacketProcessing(Channel ch) {
+		if(ch.updatePacketProcessing()) {
+			LinkedList<Channel> completeChannels = new LinkedList<Channel>();
+			completeChannels.add(ch);
+			nos.processCompletePackets(completeChannels);
+		}
+		
+		if(ch.getActiveTransmissionNum() == 0) {
+			removeChannel(ch);
+		}
+		else {
+			scheduleChannel(ch);
+		}
+	}
+	
+	private void addQuantizationDelay(double delay) {
+		if(delay <= 0)
+			return;
+		numQuantizedCompletions++;
+		totalQuantizationDelay += delay;
+		if(delay > maxQuantizationDelay)
+			maxQuantizationDelay = delay;
+	}
+	
+	public long getNumQuantizedCompletions() {
+		return numQuantizedCompletions;
+	}
+	
+	public double getMaxQuantizationDelay() {
+		return maxQuantizationDelay;
+	}
+	
+	public double getMeanQuantizationDelay() {
+		return numQuantizedCompletions == 0 ? 0 : totalQuantizationDelay / numQuantizedCompletions;
+	}
+	
 	public long getTotalNumPackets() {
 		long numPackets=0;
 		for(Channel ch:channelTable.values()) {
@@ -249,12 +437,26 @@ public class ChannelManager {
 		return channelTable.size();
 	}
 
-	public static String getChannelKey(int origin, int destination) {
-		return origin+"-"+destination;
+	public static long getChannelKey(int origin, int destination, int appId) {
+		return ChannelTable.getKey(origin, destination, appId);
 	}
 	
-	public static String getChannelKey(int origin, int destination, int appId) {
-		return getChannelKey(origin,destination)+"-"+appId;
+	/**
+	 * Moves the channel to a new route and updates the per-link index. Nothing is done if the path is the same.
+	 */
+	public void updateChannelRoute(Channel ch, PathCache.Path path) {
+		if(ch.getPathId() == path.getId())
+			return;
+		
+		List<Node> oldNodes = ch.getNodes();
+		List<Link> oldLinks = ch.getLinks();
+		ch.updateRoute(path.getNodes(), path.getLinks());
+		ch.setPathId(path.getId());
+		channelTable.updateRoute(ch, oldLinks);
+		
+		bwAllocator.markRouteChanged(oldNodes, oldLinks);
+		bwAllocator.markChanged(ch);
+		nos.sendAdjustAllChannelEvent();
 	}
 
 	public void updateMonitor(double monitoringTimeUnit) {
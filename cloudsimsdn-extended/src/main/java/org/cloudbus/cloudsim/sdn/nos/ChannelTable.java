@@ -0,0 +1,141 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn.nos;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.cloudbus.cloudsim.sdn.LongHashMap;
+import org.cloudbus.cloudsim.sdn.physicalcomponents.Link;
+import org.cloudbus.cloudsim.sdn.virtualcomponents.Channel;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * Table of the channels managed by ChannelManager.
+ * Channels are keyed by (source VM, destination VM, flow ID) packed into a primitive long,
+ * so the lookup for every packet does not build a String key.
+ * Secondary indexes by VM and by physical link let VM teardown, migration and link updates
+ * visit only the affected channels. Indexes keep insertion order so iteration is deterministic.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class ChannelTable {
+	// Packed key layout: [src: 22 bits][dst: 22 bits][flowId+1: 20 bits]
+	private static final int VM_BITS = 22;
+	private static final int FLOW_BITS = 20;
+	private static final long VM_MASK = (1L << VM_BITS) - 1;
+	private static final long FLOW_MASK = (1L << FLOW_BITS) - 1;
+
+	private LongHashMap<Channel> channels = new LongHashMap<Channel>();	// getKey(fromVM, toVM, flowID) -> Channel
+	private Multimap<Integer, Channel> channelsByVm = LinkedHashMultimap.create();	// VM ID (src or dst) -> Channels
+	private Multimap<Link, Channel> channelsByLink = LinkedHashMultimap.create();	// Physical link -> Channels passing through it
+
+	/**
+	 * Packs the IDs without checking them. The NOS checks VM and flow IDs once when they are registered
+	 * ({@link #checkVmId(int)}, {@link #checkFlowId(int)}).
+	 */
+	public static long getKey(int src, int dst, int flowId) {
+		long flow = flowId + 1L;	// default flow (-1) is stored as 0
+		return ((long)src << (VM_BITS + FLOW_BITS)) | ((long)dst << FLOW_BITS) | flow;
+	}
+
+	public static void checkVmId(int vmId) {
+		if(vmId < 0 || vmId > VM_MASK)
+			throw new IllegalArgumentException("ChannelTable: VM ID out of range for a packed key: "+vmId);
+	}
+
+	public static void checkFlowId(int flowId) {
+		long flow = flowId + 1L;
+		if(flow < 0 || flow > FLOW_MASK)
+			throw new IllegalArgumentException("ChannelTable: flow ID out of range for a packed key: "+flowId);
+	}
+
+	public static int getSrc(long key) {
+		return (int) ((key >>> (VM_BITS + FLOW_BITS)) & VM_MASK);
+	}
+
+	public static int getDst(long key) {
+		return (int) ((key >>> FLOW_BITS) & VM_MASK);
+	}
+
+	public static int getFlowId(long key) {
+		return (int) (key & FLOW_MASK) - 1;
+	}
+
+	public static long getKey(Channel ch) {
+		return getKey(ch.getSrcId(), ch.getDstId(), ch.getChId());
+	}
+
+	public Channel get(int src, int dst, int flowId) {
+		return channels.get(getKey(src, dst, flowId));
+	}
+
+	public void put(Channel ch) {
+		Channel old = channels.put(getKey(ch), ch);
+		if(old != null)
+			removeFromIndexes(old);
+
+		channelsByVm.put(ch.getSrcId(), ch);
+		channelsByVm.put(ch.getDstId(), ch);
+		for(Link l:ch.getLinks())
+			channelsByLink.put(l, ch);
+	}
+
+	public Channel remove(int src, int dst, int flowId) {
+		Channel ch = channels.remove(getKey(src, dst, flowId));
+		if(ch != null)
+			removeFromIndexes(ch);
+		return ch;
+	}
+
+	private void removeFromIndexes(Channel ch) {
+		channelsByVm.remove(ch.getSrcId(), ch);
+		channelsByVm.remove(ch.getDstId(), ch);
+		for(Link l:ch.getLinks())
+			channelsByLink.remove(l, ch);
+	}
+
+	/**
+	 * Re-indexes a channel whose route is changed (e.g. by VM migration).
+	 * @param oldLinks links of the previous route
+	 */
+	public void updateRoute(Channel ch, List<Link> oldLinks) {
+		for(Link l:oldLinks)
+			channelsByLink.remove(l, ch);
+		for(Link l:ch.getLinks())
+			channelsByLink.put(l, ch);
+	}
+
+	/**
+	 * @return channels sending from or to the VM (live view, do not modify the table while iterating).
+	 */
+	public Collection<Channel> getChannels(int vmId) {
+		return channelsByVm.get(vmId);
+	}
+
+	/**
+	 * @return channels passing through the link in either direction (live view).
+	 */
+	public Collection<Channel> getChannels(Link link) {
+		return channelsByLink.get(link);
+	}
+
+	/**
+	 * @return all channels (live view, do not modify the table while iterating).
+	 */
+	public Collection<Channel> values() {
+		return channels.values();
+	}
+
+	public int size() {
+		return channels.size();
+	}
+}
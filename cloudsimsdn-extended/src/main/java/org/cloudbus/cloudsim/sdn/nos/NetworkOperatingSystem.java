@@ -11,11 +11,9 @@ package org.cloudbus.cloudsim.sdn.nos;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.cloudbus.cloudsim.Datacenter;
 import org.cloudbus.cloudsim.Host;
@@ -26,14 +24,16 @@ import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
 import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
-import org.cloudbus.cloudsim.core.predicates.PredicateType;
+import org.cloudbus.cloudsim.core.predicates.Predicate;
 import org.cloudbus.cloudsim.sdn.CloudSimEx;
 import org.cloudbus.cloudsim.sdn.CloudSimTagsSDN;
 import org.cloudbus.cloudsim.sdn.Configuration;
+import org.cloudbus.cloudsim.sdn.EventToken;
 import org.cloudbus.cloudsim.sdn.LogWriter;
 import org.cloudbus.cloudsim.sdn.Packet;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.Link;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.Node;
+import org.cloudbus.cloudsim.sdn.physicalcomponents.PathCache;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.PhysicalTopology;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.PhysicalTopologyInterCloud;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.SDNDatacenter;
@@ -95,9 +95,19 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	public static final double latencyWithinSameHost = 0.1; //0.1 msec latency 
 	
 	private double lastMigration = 0;
-	private double lastAdjustAllChannelTime = -1;
+	private boolean isAdjustAllChannelPending = false;
 	private double nextEventTime = -1;
 	
+	// Lazy cancellation of SDN_INTERNAL_PACKET_PROCESS: only the event with the latest generation is processed.
+	private long internalEventGeneration = 0;
+	private EventToken internalEventToken = null;
+	private int numCancelledInternalEvents = 0;
+	
+	// Completed packets with the same datacenter and latency, not sent yet
+	private List<Packet> batchPackets = new ArrayList<Packet>();
+	private Datacenter batchDatacenter = null;
+	private double batchLatency = 0;
+	
 	/**
 	 * 1. map VMs and middleboxes to hosts, add the new vm/mb to the vmHostTable, advise host, advise dc
 	 * 2. set channels and bws
@@ -140,6 +150,9 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 		}
 		
 		topology.buildDefaultRouting();
+		topology.buildViews();
+		if(Configuration.PRECOMPUTE_HOST_PATHS)
+			topology.buildPathCache();
 	}
 
 	@Override
@@ -149,7 +162,12 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 
 	@Override
 	public void shutdownEntity() {
-		
+		if(Configuration.CHANNEL_COMPLETION_EPSILON > 0 && channelManager != null) {
+			Log.printLine(getName() + ": channel completions delayed by time quantization (epsilon="
+					+ Configuration.CHANNEL_COMPLETION_EPSILON + "s): " + channelManager.getNumQuantizedCompletions()
+					+ ", mean delay=" + channelManager.getMeanQuantizationDelay()
+					+ "s, max delay=" + channelManager.getMaxQuantizationDelay() + "s");
+		}
 	}
 	
 	@Override
@@ -161,11 +179,15 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 				processInternalAdjustChannels();
 				break;				
 			case CloudSimTagsSDN.SDN_INTERNAL_PACKET_PROCESS: 
-				processInternalPacketProcessing(); 
+				if(isCurrentInternalEvent(ev))
+					processInternalPacketProcessing(); 
 				break;
 			case CloudSimTags.VM_CREATE_ACK:
 				processVmCreateAck(ev);
 				break;
+			case CloudSimTagsSDN.SDN_VM_CREATE_BULK_ACK:
+				processVmCreateBulkAck(ev);
+				break;
 			case CloudSimTags.VM_DESTROY:
 				processVmDestroyAck(ev);
 				break;
@@ -176,6 +198,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 				if(this.datacenter != null)
 					this.datacenter.processUpdateProcessing();
 				channelManager.updatePacketProcessing();
+				purgeCancelledInternalEvents();
 				
 				this.updateBWMonitor(Configuration.monitoringTimeInterval);
 				this.updateHostMonitor(Configuration.monitoringTimeInterval);
@@ -216,6 +239,10 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 //		vm.setSDNHost(host);
 	}
 	
+	// Acknowledgement of CloudSimTagsSDN.SDN_VM_CREATE_BULK with the list of VMs
+	protected void processVmCreateBulkAck(SimEvent ev) {
+	}
+	
 	protected void processVmCreateDynamicAck(SimEvent ev) {
 		
 		Object [] data = (Object []) ev.getData();
@@ -257,23 +284,33 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	}
 
 	private void processInternalPacketProcessing() {
-		if(channelManager.updatePacketProcessing()) {
+		if(channelManager.updateDuePacketProcessing()) {
 			sendInternalEvent();
 		}
+		else {
+			purgeCancelledInternalEvents();
+		}
 	}
 		
 	protected void processVmDestroyAck(SimEvent ev) {
 		Vm destroyedVm = (Vm) ev.getData();
-		// remove all channels transferring data from or to this vm.
-		for(Vm vm:this.vmMapId2Vm.values()) {
-			channelManager.removeChannel(vm.getId(), destroyedVm.getId(), -1);
-			channelManager.removeChannel(destroyedVm.getId(), vm.getId(), -1);
+		vnMapper.removeVmPaths(destroyedVm.getId());
+		// remove all default channels transferring data from or to this vm.
+		for(Channel ch:channelManager.findAllChannels(destroyedVm.getId())) {
+			int otherVmId = (ch.getSrcId() == destroyedVm.getId()) ? ch.getDstId() : ch.getSrcId();
+			if(ch.getChId() == -1 && this.vmMapId2Vm.containsKey(otherVmId)) {
+				channelManager.removeChannel(ch.getSrcId(), ch.getDstId(), -1);
+			}
 		}
 		sendInternalEvent();
 	}
 	
 	protected void processInternalAdjustChannels() {
-		channelManager.adjustAllChannel();
+		isAdjustAllChannelPending = false;
+		if(channelManager.adjustAllChannel()) {
+			// Finish times are changed with the new bandwidth
+			sendInternalEvent();
+		}
 	}
 
 	public boolean startDeployApplicatoin() {
@@ -298,8 +335,6 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 		if(Configuration.ENABLE_SFC)
 			pkt = sfcForwarder.enforceSFC(pkt); 
 		
-		channelManager.updatePacketProcessing();
-		
 		int src = pkt.getOrigin();
 		int dst = pkt.getDestination();
 		int flowId = pkt.getFlowId();
@@ -315,6 +350,13 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 		}
 		
 		Channel channel = channelManager.findChannel(src, dst, flowId);
+		if(channel != null) {
+			// Bring the channel up to date before the new transmission changes its bandwidth share.
+			// The channel is removed if all of its transmissions are completed by now.
+			channelManager.updatePacketProcessing(channel);
+			channel = channelManager.findChannel(src, dst, flowId);
+		}
+		
 		if(channel == null) {
 			//No channel established. Create a new channel.
 			SDNHost sender = findHost(src);
@@ -328,7 +370,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 			channelManager.addChannel(src, dst, flowId, channel);
 		}
 		
-		channel.addTransmission(new Transmission(pkt));
+		channelManager.addTransmission(channel, new Transmission(pkt));
 //		Log.printLine(CloudSim.clock() + ": " + getName() + ".addPacketToChannel ("+channel
 //				+"): Transmission added:" + 
 //				NetworkOperatingSystem.getVmName(src) + "->"+
@@ -342,6 +384,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	public void processCompletePackets(List<Channel> channels){
 		for(Channel ch:channels) {
 			for (Transmission tr:ch.getArrivedPackets()){
+				channelManager.removeTransmissionTimeout(tr);
 				Packet pkt = tr.getPacket();
 				int vmId = pkt.getDestination(); 
 				Datacenter dc = SDNDatacenter.findDatacenterGlobal(vmId);
@@ -350,15 +393,41 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 				sendPacketCompleteEvent(dc, pkt, ch.getTotalLatency());
 			}
 			
-			for (Transmission tr:ch.getFailedPackets()){
+			List<Transmission> failed = ch.getFailedPackets();
+			if(!failed.isEmpty())
+				flushPacketCompleteBatch();	// Keep the order of the events
+			for (Transmission tr:failed){
 				Packet pkt = tr.getPacket();
 				sendPacketFailedEvent(this.datacenter, pkt, ch.getTotalLatency());
 			}
 		}
+		flushPacketCompleteBatch();
 	}
 	
 	private void sendPacketCompleteEvent(Datacenter dc, Packet pkt, double latency){
-		send(dc.getId(), latency, CloudSimTagsSDN.SDN_PACKET_COMPLETE, pkt);
+		if(!Configuration.BATCH_PACKET_COMPLETE_EVENTS) {
+			send(dc.getId(), latency, CloudSimTagsSDN.SDN_PACKET_COMPLETE, pkt);
+			return;
+		}
+		
+		if(!batchPackets.isEmpty() && (dc != batchDatacenter || latency != batchLatency))
+			flushPacketCompleteBatch();
+		batchDatacenter = dc;
+		batchLatency = latency;
+		batchPackets.add(pkt);
+	}
+	
+	private void flushPacketCompleteBatch() {
+		if(batchPackets.isEmpty())
+			return;
+		
+		if(batchPackets.size() == 1)
+			send(batchDatacenter.getId(), batchLatency, CloudSimTagsSDN.SDN_PACKET_COMPLETE, batchPackets.get(0));
+		else
+			send(batchDatacenter.getId(), batchLatency, CloudSimTagsSDN.SDN_PACKET_COMPLETE_BATCH,
+					batchPackets.toArray(new Packet[batchPackets.size()]));
+		batchPackets.clear();
+		batchDatacenter = null;
 	}
 
 	private void sendPacketFailedEvent(Datacenter dc, Packet pkt, double latency){
@@ -366,9 +435,10 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	}
 
 	public void sendAdjustAllChannelEvent() {
-		if(CloudSim.clock() != lastAdjustAllChannelTime) {
+		// One pending event adjusts all the changes made until it is processed.
+		if(!isAdjustAllChannelPending) {
 			send(getId(), 0, CloudSimTagsSDN.SDN_INTERNAL_CHANNEL_PROCESS);
-			lastAdjustAllChannelTime = CloudSim.clock();
+			isAdjustAllChannelPending = true;
 		}
 	}
 
@@ -379,6 +449,8 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 			
 			// More to process. Send event again
 			double delay = channelManager.nextFinishTime();
+			if(Configuration.CHANNEL_COMPLETION_EPSILON > 0)
+				delay = getQuantizationWindowEnd(CloudSim.clock() + delay) - CloudSim.clock();
 
 			if (delay < CloudSim.getMinTimeBetweenEvents()) { 
 				//Log.printLine(CloudSim.clock() + ":Channel: delay is too short: "+ delay);
@@ -391,11 +463,55 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 			{
 				//Log.printLine(CloudSim.clock() + ": " + getName() + ".sendInternalEvent(): next event time changed! old="+ nextEventTime+", new="+(CloudSim.clock()+delay));
 				
-				CloudSim.cancelAll(getId(), new PredicateType(CloudSimTagsSDN.SDN_INTERNAL_PACKET_PROCESS));
-				send(this.getId(), delay, CloudSimTagsSDN.SDN_INTERNAL_PACKET_PROCESS);
+				// The previous event is ignored when delivered, instead of cancelling it from the queue.
+				if(internalEventToken != null && !internalEventToken.isCancelled()) {
+					internalEventToken.cancel();
+					numCancelledInternalEvents++;
+				}
+				internalEventToken = new EventToken(++internalEventGeneration);
+				send(this.getId(), delay, CloudSimTagsSDN.SDN_INTERNAL_PACKET_PROCESS, internalEventToken);
 				nextEventTime = CloudSim.clock()+delay;
 			}
 		}
+		else {
+			purgeCancelledInternalEvents();
+		}
+	}
+
+	// When no channel is left, drops the cancelled events so they do not extend the simulation
+	private void purgeCancelledInternalEvents() {
+		if(numCancelledInternalEvents == 0 || channelManager.getTotalChannelNum() != 0)
+			return;
+
+		CloudSim.cancelAll(getId(), new Predicate() {
+			@Override
+			public boolean match(SimEvent ev) {
+				return ev.getTag() == CloudSimTagsSDN.SDN_INTERNAL_PACKET_PROCESS && EventToken.isCancelled(ev);
+			}
+		});
+		numCancelledInternalEvents = 0;
+	}
+	
+	// End of the epsilon window of the given finish time, so the completions in the window are processed together
+	static double getQuantizationWindowEnd(double finishTime) {
+		double epsilon = Configuration.CHANNEL_COMPLETION_EPSILON;
+		double windowEnd = Math.ceil(finishTime / epsilon) * epsilon;
+		if(windowEnd < finishTime)
+			windowEnd += epsilon;
+		return windowEnd;
+	}
+	
+	private boolean isCurrentInternalEvent(SimEvent ev) {
+		if(!(ev.getData() instanceof EventToken))
+			return true;
+		EventToken token = (EventToken) ev.getData();
+		if(token.getGeneration() != internalEventGeneration) {
+			// Superseded by a later event
+			numCancelledInternalEvents--;
+			return false;
+		}
+		internalEventToken = null;	// Delivered
+		return true;
 	}
 
 	public void updateChannelBandwidth(int src, int dst, int flowId, long newBandwidth) {
@@ -410,20 +526,21 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	
 	private void migrateChannel(Vm vm, SDNHost oldHost, SDNHost newHost) {
 		for(Channel ch:channelManager.findAllChannels(vm.getId())) {
-			List<Node> nodes = new ArrayList<Node>();
-			List<Link> links = new ArrayList<Link>();
-
 			SDNHost sender = findHost(ch.getSrcId());	// After migrated
 			
-			vnMapper.buildNodesLinks(ch.getSrcId(), ch.getDstId(), 
-					ch.getChId(), sender, nodes, links);
+			PathCache.Path path = vnMapper.getPath(ch.getSrcId(), ch.getDstId(), ch.getChId(), sender);
+			if(path == null) {
+				System.err.println("migrateChannel() Cannot find the new route of "+ch);
+				continue;
+			}
 			
 			// update with the new nodes and links
-			ch.updateRoute(nodes, links);			
+			channelManager.updateChannelRoute(ch, path);
 		}
 	}
 
 	public void addExtraVm(SDNVm vm, NetworkOperatingSystem callback) {
+		ChannelTable.checkVmId(vm.getId());
 		vmMapId2Vm.put(vm.getId(), vm);
 		gvmMapId2Vm.put(vm.getId(), vm);
 		
@@ -549,11 +666,11 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	
 	@SuppressWarnings("unchecked")
 	public <T extends Host> List<T> getHostList() {
-		return (List<T>)topology.getAllHosts();
+		return (List<T>) new ArrayList<SDNHost>(topology.getAllHosts());
 	}
 		
 	public List<Switch> getSwitchList() {
-		return (List<Switch>) topology.getAllSwitches();
+		return new ArrayList<Switch>(topology.getAllSwitches());
 	}
 
 	public boolean isApplicationDeployed() {
@@ -592,6 +709,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	}
 	
 	public void addVm(SDNVm vm) {
+		ChannelTable.checkVmId(vm.getId());
 		vmMapId2Vm.put(vm.getId(), vm);
 		gvmMapId2Vm.put(vm.getId(), vm);
 	}
@@ -602,6 +720,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	}
 	
 	public void addFlow(FlowConfig flow) {
+		ChannelTable.checkFlowId(flow.getFlowId());
 		insertFlowToMap(flow);
 		
 		if(flow.getFlowId() != -1) {
@@ -650,8 +769,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	private void updateBWMonitor(double monitoringTimeUnit) {
 		double highest=0;
 		// Update utilization of all links
-		Set<Link> links = new HashSet<Link>(this.topology.getAllLinks());
-		for(Link l:links) {
+		for(Link l:this.topology.getLinkArray()) {
 			double util = l.updateMonitor(CloudSim.clock(), monitoringTimeUnit);
 			if(util > highest) highest=util;
 		}
@@ -668,7 +786,7 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	}
 	
 	private void updateSwitchMonitor(double monitoringTimeUnit) {
-		for(Switch s:getSwitchList()) {
+		for(Switch s:topology.getSwitchArray()) {
 			s.updateMonitor(CloudSim.clock(), monitoringTimeUnit);
 		}
 	}
@@ -697,18 +815,13 @@ public abstract class NetworkOperatingSystem extends SimEntity {
 	}
 
 	public double calculateLatency(int srcVmId, int dstVmId, int flowId) {
-		List<Node> nodes = new ArrayList<Node>();
-		List<Link> links = new ArrayList<Link>();
 		Node srcHost = findHost(srcVmId);
-		vnMapper.buildNodesLinks(srcVmId, dstVmId, flowId, srcHost, nodes, links);
+		PathCache.Path path = vnMapper.getPath(srcVmId, dstVmId, flowId, srcHost);
+		if(path == null)
+			return 0;
 		
-		double latency = 0;
-		// Calculate the latency of the links.
-		for(Link l:links) {
-			latency += l.getLatencyInSeconds(); 
-		}
-
-		return latency;
+		// Latency of the links, summed when the path is cached.
+		return path.getLatency();
 	}
 
 	/*
@@ -7,16 +7,23 @@
  */
 package org.cloudbus.cloudsim.sdn.nos;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
 import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.sdn.CloudSimTagsSDN;
+import org.cloudbus.cloudsim.sdn.Configuration;
 import org.cloudbus.cloudsim.sdn.sfc.ServiceFunctionChainPolicy;
 import org.cloudbus.cloudsim.sdn.virtualcomponents.FlowConfig;
 import org.cloudbus.cloudsim.sdn.virtualcomponents.SDNVm;
@@ -30,6 +37,11 @@ import org.cloudbus.cloudsim.sdn.virtualcomponents.SDNVm;
  * @since CloudSimSDN 1.0
  */
 public class NetworkOperatingSystemSimple extends NetworkOperatingSystem {
+	// Flows to a VM in another datacenter not created yet. Retried whenever a VM is created here.
+	private Set<FlowConfig> pendingRemoteFlows = new LinkedHashSet<FlowConfig>();
+	
+	private int numVmsToCreate = 0;
+	private int numVmsCreated = 0;
 
 	public NetworkOperatingSystemSimple(String name) {
 		super(name);
@@ -49,13 +61,27 @@ public class NetworkOperatingSystemSimple extends NetworkOperatingSystem {
 		    }
 		});
 				
+		numVmsToCreate += vms.size();
+		
+		// VMs to create in one event for each start time (CREATE_VMS_IN_BULK)
+		Map<Double, List<SDNVm>> vmsByStartTime = new LinkedHashMap<Double, List<SDNVm>>();
 				
 		for(Vm vm:vms)
 		{
 			SDNVm tvm = (SDNVm)vm;
-			Log.printLine(CloudSim.clock() + ": " + getName() + ": Trying to Create VM #" + tvm.getId()
-					+ " in " + datacenter.getName() + ", (" + tvm.getStartTime() + "~" +tvm.getFinishTime() + ")");
-			send(datacenter.getId(), tvm.getStartTime(), CloudSimTags.VM_CREATE_ACK, tvm);
+			if(Configuration.CREATE_VMS_IN_BULK) {
+				List<SDNVm> group = vmsByStartTime.get(tvm.getStartTime());
+				if(group == null) {
+					group = new ArrayList<SDNVm>();
+					vmsByStartTime.put(tvm.getStartTime(), group);
+				}
+				group.add(tvm);
+			}
+			else {
+				Log.printLine(CloudSim.clock() + ": " + getName() + ": Trying to Create VM #" + tvm.getId()
+						+ " in " + datacenter.getName() + ", (" + tvm.getStartTime() + "~" +tvm.getFinishTime() + ")");
+				send(datacenter.getId(), tvm.getStartTime(), CloudSimTags.VM_CREATE_ACK, tvm);
+			}
 			
 			if(tvm.getFinishTime() != Double.POSITIVE_INFINITY) {
 				//System.err.println("VM will be terminated at: "+tvm.getFinishTime());
@@ -63,6 +89,12 @@ public class NetworkOperatingSystemSimple extends NetworkOperatingSystem {
 				send(this.getId(), tvm.getFinishTime(), CloudSimTags.VM_DESTROY, tvm);
 			}
 		}
+		
+		for(Map.Entry<Double, List<SDNVm>> group:vmsByStartTime.entrySet()) {
+			Log.printLine(CloudSim.clock() + ": " + getName() + ": Trying to Create " + group.getValue().size() + " VMs"
+					+ " in " + datacenter.getName() + " at " + group.getKey());
+			send(datacenter.getId(), group.getKey(), CloudSimTagsSDN.SDN_VM_CREATE_BULK, group.getValue());
+		}
 		return true;
 	}
 	
@@ -73,12 +105,47 @@ public class NetworkOperatingSystemSimple extends NetworkOperatingSystem {
 		// print the created VM info
 		SDNVm vm = (SDNVm) ev.getData();
 		Log.printLine(CloudSim.clock() + ": " + getName() + ": VM Created: " +  vm + " in " + vm.getHost());
-		deployFlow(this.flowMapVmId2Flow.values());
+		
+		deployFlowsOfCreatedVms(Collections.singletonList(vm));
+	}
+	
+	@Override
+	protected void processVmCreateBulkAck(SimEvent ev) {
+		@SuppressWarnings("unchecked")
+		List<SDNVm> vms = (List<SDNVm>) ev.getData();
+		for(SDNVm vm:vms)
+			Log.printLine(CloudSim.clock() + ": " + getName() + ": VM Created: " +  vm + " in " + vm.getHost());
+		
+		deployFlowsOfCreatedVms(vms);
+	}
+	
+	private void deployFlowsOfCreatedVms(List<SDNVm> vms) {
+		if(Configuration.DEPLOY_FLOWS_AFTER_ALL_VMS_CREATED) {
+			// Deploy all flows at once when every VM is acknowledged
+			numVmsCreated += vms.size();
+			if(numVmsCreated == numVmsToCreate)
+				deployFlow(this.flowMapVmId2Flow.values());
+			return;
+		}
+		
+		// Only flows of the new VMs can get a route now (or a new route, if a VM is placed again).
+		Set<FlowConfig> flows = new LinkedHashSet<FlowConfig>();
+		for(SDNVm vm:vms)
+			flows.addAll(this.flowMapVmId2Flow.get(vm.getId()));
+		deployFlow(flows);
+		if(!pendingRemoteFlows.isEmpty())
+			deployFlow(new ArrayList<FlowConfig>(pendingRemoteFlows));
 	}
 	
 	private boolean deployFlow(Collection<FlowConfig> arcs) {
 		for(FlowConfig arc:arcs) {
-			vnMapper.buildForwardingTable(arc.getSrcId(), arc.getDstId(), arc.getFlowId());			
+			if(vnMapper.buildForwardingTable(arc.getSrcId(), arc.getDstId(), arc.getFlowId())) {
+				pendingRemoteFlows.remove(arc);
+			}
+			else if(findVmLocal(arc.getSrcId()) == null || findVmLocal(arc.getDstId()) == null) {
+				// The other end will be acknowledged to another datacenter's NOS.
+				pendingRemoteFlows.add(arc);
+			}
 		}
 		
 		/*/ Print all routing tables.
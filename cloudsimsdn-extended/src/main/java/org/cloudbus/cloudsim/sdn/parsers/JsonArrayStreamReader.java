@@ -0,0 +1,155 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2017, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn.parsers;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.cloudbus.cloudsim.sdn.Configuration;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Reads a JSON document made of top-level arrays (e.g. "nodes", "links") token by token,
+ * handing over each element of the arrays as soon as it is complete.
+ * Only the element being read is held in memory, not the whole document.
+ * Elements are built with the same types as JSONValue.parse() (JSONObject, JSONArray, Long, Double, String...).
+ * Top-level values which are not arrays are skipped.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class JsonArrayStreamReader implements ContentHandler {
+	public interface ElementHandler {
+		/**
+		 * @param arrayName top-level key of the array
+		 * @param element an element of the array
+		 */
+		void element(String arrayName, Object element);
+	}
+
+	private final ElementHandler handler;
+
+	private int depth = 0;	// Nesting of objects and arrays
+	private String topKey = null;	// Current top-level key
+	private boolean inTopArray = false;	// Inside the array of topKey
+
+	private Deque<Object> containers = new ArrayDeque<Object>();	// Objects and arrays of the element being built
+	private Deque<String> keys = new ArrayDeque<String>();
+
+	private JsonArrayStreamReader(ElementHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Reads the file, through its snapshot if Configuration.TOPOLOGY_SNAPSHOT_DIR is set (see {@link TopologySnapshot}).
+	 */
+	public static void read(String filename, ElementHandler handler) throws IOException, ParseException {
+		if(Configuration.TOPOLOGY_SNAPSHOT_DIR != null)
+			TopologySnapshot.read(filename, Configuration.TOPOLOGY_SNAPSHOT_DIR, handler);
+		else
+			parse(filename, handler);
+	}
+
+	public static void parse(String filename, ElementHandler handler) throws IOException, ParseException {
+		try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+			new JSONParser().parse(reader, new JsonArrayStreamReader(handler));
+		}
+	}
+
+	private boolean isBuilding() {
+		return inTopArray && depth >= 3;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void complete(Object value) {
+		if(containers.isEmpty()) {
+			handler.element(topKey, value);
+			return;
+		}
+
+		Object parent = containers.peek();
+		if(parent instanceof JSONObject)
+			((JSONObject) parent).put(keys.pop(), value);
+		else
+			((JSONArray) parent).add(value);
+	}
+
+	@Override
+	public void startJSON() {
+	}
+
+	@Override
+	public void endJSON() {
+	}
+
+	@Override
+	public boolean startObject() {
+		depth++;
+		if(isBuilding())
+			containers.push(new JSONObject());
+		return true;
+	}
+
+	@Override
+	public boolean endObject() {
+		if(isBuilding())
+			complete(containers.pop());
+		depth--;
+		return true;
+	}
+
+	@Override
+	public boolean startObjectEntry(String key) {
+		if(depth == 1)
+			topKey = key;
+		else if(isBuilding())
+			keys.push(key);
+		return true;
+	}
+
+	@Override
+	public boolean endObjectEntry() {
+		if(depth == 1)
+			topKey = null;
+		return true;
+	}
+
+	@Override
+	public boolean startArray() {
+		depth++;
+		if(depth == 2 && topKey != null)
+			inTopArray = true;
+		else if(isBuilding())
+			containers.push(new JSONArray());
+		return true;
+	}
+
+	@Override
+	public boolean endArray() {
+		if(depth == 2)
+			inTopArray = false;
+		else if(isBuilding())
+			complete(containers.pop());
+		depth--;
+		return true;
+	}
+
+	@Override
+	public boolean primitive(Object value) {
+		if(inTopArray)
+			complete(value);
+		return true;
+	}
+}
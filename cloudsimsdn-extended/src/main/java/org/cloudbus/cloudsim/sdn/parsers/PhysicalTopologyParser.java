@@ -8,14 +8,12 @@
 
 package org.cloudbus.cloudsim.sdn.parsers;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -32,9 +30,8 @@ import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.EdgeSwitch;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.GatewaySwitch;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.IntercloudSwitch;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.Switch;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
@@ -42,6 +39,8 @@ import com.google.common.collect.Multimap;
 /**
  * This class parses Physical Topology JSON file.
  * It supports multiple data centers.
+ * The file is read once as a stream (see {@link JsonArrayStreamReader}): nodes are created
+ * and put in their data centers as they are read, without building the whole document.
  * 
  * @author Jungmin Son
  * @since CloudSimSDN 1.0
@@ -55,6 +54,9 @@ public class PhysicalTopologyParser {
   private Hashtable<String, Node> nameNodeTable = new Hashtable<String, Node>();
   private HostFactory hostFactory = null;
 
+  // Links read before their nodes, created at the end of the file
+  private List<JSONObject> pendingLinks = new ArrayList<JSONObject>();
+
   public PhysicalTopologyParser(String jsonFilename, HostFactory hostFactory) {
     sdnHosts = HashMultimap.create();
     switches = HashMultimap.create();
@@ -65,7 +67,7 @@ public class PhysicalTopologyParser {
 
   public static Map<String, NetworkOperatingSystem> loadPhysicalTopologyMultiDC(String physicalTopologyFilename) {
     PhysicalTopologyParser parser = new PhysicalTopologyParser(physicalTopologyFilename, new HostFactorySimple());
-    Map<String, String> dcNameType = parser.parseDatacenters(); // DC Name -> DC Type
+    Map<String, String> dcNameType = parser.parseAll(); // DC Name -> DC Type, along with all nodes and links
     Map<String, NetworkOperatingSystem> netOsList = new HashMap<String, NetworkOperatingSystem>();
 
     for (String dcName : dcNameType.keySet()) {
@@ -73,9 +75,7 @@ public class PhysicalTopologyParser {
       nos = new NetworkOperatingSystemSimple("NOS_" + dcName);
 
       netOsList.put(dcName, nos);
-      parser.parseNode(dcName);
     }
-    parser.parseLink();
 
     for (String dcName : dcNameType.keySet()) {
       if (!"network".equals(dcNameType.get(dcName))) {
@@ -121,158 +121,194 @@ public class PhysicalTopologyParser {
   }
 
   public Map<String, String> parseDatacenters() {
-    HashMap<String, String> dcNameType = new HashMap<String, String>();
-    try {
-      JSONObject doc = (JSONObject) JSONValue.parse(new FileReader(this.filename));
-
-      JSONArray datacenters = (JSONArray) doc.get("datacenters");
-      @SuppressWarnings("unchecked")
-      Iterator<JSONObject> iter = datacenters.iterator();
-      while (iter.hasNext()) {
-        JSONObject node = iter.next();
-        String dcName = (String) node.get("name");
-        String type = (String) node.get("type");
+    final HashMap<String, String> dcNameType = new HashMap<String, String>();
+    read(new JsonArrayStreamReader.ElementHandler() {
+      @Override
+      public void element(String arrayName, Object element) {
+        if ("datacenters".equals(arrayName))
+          parseDatacenter((JSONObject) element, dcNameType);
+      }
+    });
+    return dcNameType;
+  }
 
-        dcNameType.put(dcName, type);
+  /**
+   * Reads data centers, nodes of all data centers and links in one pass.
+   *
+   * @return DC Name -> DC Type
+   */
+  public Map<String, String> parseAll() {
+    final HashMap<String, String> dcNameType = new HashMap<String, String>();
+    read(new JsonArrayStreamReader.ElementHandler() {
+      @Override
+      public void element(String arrayName, Object element) {
+        if ("datacenters".equals(arrayName))
+          parseDatacenter((JSONObject) element, dcNameType);
+        else if ("nodes".equals(arrayName))
+          parseNode((JSONObject) element, null);
+        else if ("links".equals(arrayName))
+          parseLink((JSONObject) element);
       }
-    } catch (FileNotFoundException e) {
+    });
+    createPendingLinks();
+    return dcNameType;
+  }
+
+  private void read(JsonArrayStreamReader.ElementHandler handler) {
+    try {
+      JsonArrayStreamReader.read(this.filename, handler);
+    } catch (IOException | ParseException e) {
       e.printStackTrace();
     }
+  }
 
-    return dcNameType;
+  private void parseDatacenter(JSONObject node, Map<String, String> dcNameType) {
+    String dcName = (String) node.get("name");
+    String type = (String) node.get("type");
+
+    dcNameType.put(dcName, type);
   }
 
   private void parse(NetworkOperatingSystem nos) {
-    parseNode(null);
-    parseLink();
+    parseAll();
   }
 
-  public void parseNode(String datacenterName) {
-    try {
-      JSONObject doc = (JSONObject) JSONValue.parse(new FileReader(this.filename));
-
-      // Get Nodes (Switches and Hosts)
-      JSONArray nodes = (JSONArray) doc.get("nodes");
-      @SuppressWarnings("unchecked")
-      Iterator<JSONObject> iter = nodes.iterator();
-      while (iter.hasNext()) {
-        JSONObject node = iter.next();
-        String nodeType = (String) node.get("type");
-        String nodeName = (String) node.get("name");
-        String dcName = (String) node.get("datacenter");
-        if (datacenterName != null && !datacenterName.equals(dcName)) {
-          continue;
-        }
-
-        if (nodeType.equalsIgnoreCase("host")) {
-          ////////////////////////////////////////
-          // Host
-          ////////////////////////////////////////
-
-          long pes = (Long) node.get("pes");
-          long mips = (Long) node.get("mips");
-          int ram = new BigDecimal((Long) node.get("ram")).intValueExact();
-          long storage = (Long) node.get("storage");
-          long bw = new BigDecimal((Long) node.get("bw")).intValueExact();
-          double mtbf = (Double) node.get("mtbf") / 3600;
-          double mttr = (Double) node.get("mttr") / 3600;
-
-          int num = 1;
-          if (node.get("nums") != null)
-            num = new BigDecimal((Long) node.get("nums")).intValueExact();
-
-          double pMin = ((Number) node.get("p_min")).doubleValue();
-          double pMax = ((Number) node.get("p_max")).doubleValue();
-
-          for (int n = 0; n < num; n++) {
-            String nodeName2 = nodeName;
-            if (num > 1)
-              nodeName2 = nodeName + n;
-
-            SDNHost sdnHost = hostFactory.createHost(mtbf, mttr, ram, bw, storage, pes, mips, nodeName);
-
-            sdnHost.setPowerModel(pMin, pMax);
-
-            nameNodeTable.put(nodeName2, sdnHost);
-            // hostId++;
-
-            this.sdnHosts.put(dcName, sdnHost);
-          }
-
-        } else {
-          ////////////////////////////////////////
-          // Switch
-          ////////////////////////////////////////
-
-          int MAX_PORTS = 256;
-
-          double pStatic = ((Number) node.get("p_static")).doubleValue();
-          double pPort = ((Number) node.get("p_port")).doubleValue();
-
-          long bw = new BigDecimal((Long) node.get("bw")).longValueExact();
-          long iops = (Long) node.get("iops");
-          int upports = MAX_PORTS;
-          int downports = MAX_PORTS;
-          if (node.get("upports") != null)
-            upports = new BigDecimal((Long) node.get("upports")).intValueExact();
-          if (node.get("downports") != null)
-            downports = new BigDecimal((Long) node.get("downports")).intValueExact();
-          Switch sw = null;
-
-          if (nodeType.equalsIgnoreCase("core")) {
-            sw = new CoreSwitch(nodeName, bw, iops, upports, downports);
-          } else if (nodeType.equalsIgnoreCase("aggregate")) {
-            sw = new AggregationSwitch(nodeName, bw, iops, upports, downports);
-          } else if (nodeType.equalsIgnoreCase("edge")) {
-            sw = new EdgeSwitch(nodeName, bw, iops, upports, downports);
-          } else if (nodeType.equalsIgnoreCase("intercloud")) {
-            sw = new IntercloudSwitch(nodeName, bw, iops, upports, downports);
-          } else if (nodeType.equalsIgnoreCase("gateway")) {
-            // Find if this gateway is already created? If so, share it!
-            if (nameNodeTable.get(nodeName) != null)
-              sw = (Switch) nameNodeTable.get(nodeName);
-            else
-              sw = new GatewaySwitch(nodeName, bw, iops, upports, downports);
-          } else {
-            throw new IllegalArgumentException("No switch found!");
-          }
-
-          if (sw != null) {
-            sw.setPowerModel(pStatic, pPort);
-
-            nameNodeTable.put(nodeName, sw);
-            this.switches.put(dcName, sw);
-          }
-        }
+  public void parseNode(final String datacenterName) {
+    read(new JsonArrayStreamReader.ElementHandler() {
+      @Override
+      public void element(String arrayName, Object element) {
+        if ("nodes".equals(arrayName))
+          parseNode((JSONObject) element, datacenterName);
+      }
+    });
+  }
+
+  private void parseNode(JSONObject node, String datacenterName) {
+    String nodeType = (String) node.get("type");
+    String nodeName = (String) node.get("name");
+    String dcName = (String) node.get("datacenter");
+    if (datacenterName != null && !datacenterName.equals(dcName)) {
+      return;
+    }
+
+    if (nodeType.equalsIgnoreCase("host")) {
+      ////////////////////////////////////////
+      // Host
+      ////////////////////////////////////////
+
+      long pes = (Long) node.get("pes");
+      long mips = (Long) node.get("mips");
+      int ram = new BigDecimal((Long) node.get("ram")).intValueExact();
+      long storage = (Long) node.get("storage");
+      long bw = new BigDecimal((Long) node.get("bw")).intValueExact();
+      double mtbf = (Double) node.get("mtbf") / 3600;
+      double mttr = (Double) node.get("mttr") / 3600;
+
+      int num = 1;
+      if (node.get("nums") != null)
+        num = new BigDecimal((Long) node.get("nums")).intValueExact();
+
+      double pMin = ((Number) node.get("p_min")).doubleValue();
+      double pMax = ((Number) node.get("p_max")).doubleValue();
+
+      for (int n = 0; n < num; n++) {
+        String nodeName2 = nodeName;
+        if (num > 1)
+          nodeName2 = nodeName + n;
+
+        SDNHost sdnHost = hostFactory.createHost(mtbf, mttr, ram, bw, storage, pes, mips, nodeName);
+
+        sdnHost.setPowerModel(pMin, pMax);
+
+        nameNodeTable.put(nodeName2, sdnHost);
+        // hostId++;
+
+        this.sdnHosts.put(dcName, sdnHost);
+      }
+
+    } else {
+      ////////////////////////////////////////
+      // Switch
+      ////////////////////////////////////////
+
+      int MAX_PORTS = 256;
+
+      double pStatic = ((Number) node.get("p_static")).doubleValue();
+      double pPort = ((Number) node.get("p_port")).doubleValue();
+
+      long bw = new BigDecimal((Long) node.get("bw")).longValueExact();
+      long iops = (Long) node.get("iops");
+      int upports = MAX_PORTS;
+      int downports = MAX_PORTS;
+      if (node.get("upports") != null)
+        upports = new BigDecimal((Long) node.get("upports")).intValueExact();
+      if (node.get("downports") != null)
+        downports = new BigDecimal((Long) node.get("downports")).intValueExact();
+      Switch sw = null;
+
+      if (nodeType.equalsIgnoreCase("core")) {
+        sw = new CoreSwitch(nodeName, bw, iops, upports, downports);
+      } else if (nodeType.equalsIgnoreCase("aggregate")) {
+        sw = new AggregationSwitch(nodeName, bw, iops, upports, downports);
+      } else if (nodeType.equalsIgnoreCase("edge")) {
+        sw = new EdgeSwitch(nodeName, bw, iops, upports, downports);
+      } else if (nodeType.equalsIgnoreCase("intercloud")) {
+        sw = new IntercloudSwitch(nodeName, bw, iops, upports, downports);
+      } else if (nodeType.equalsIgnoreCase("gateway")) {
+        // Find if this gateway is already created? If so, share it!
+        if (nameNodeTable.get(nodeName) != null)
+          sw = (Switch) nameNodeTable.get(nodeName);
+        else
+          sw = new GatewaySwitch(nodeName, bw, iops, upports, downports);
+      } else {
+        throw new IllegalArgumentException("No switch found!");
+      }
+
+      if (sw != null) {
+        sw.setPowerModel(pStatic, pPort);
+
+        nameNodeTable.put(nodeName, sw);
+        this.switches.put(dcName, sw);
       }
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
     }
   }
 
   public void parseLink() {
-    try {
-      JSONObject doc = (JSONObject) JSONValue.parse(new FileReader(this.filename));
-
-      JSONArray links = (JSONArray) doc.get("links");
-      @SuppressWarnings("unchecked")
-      Iterator<JSONObject> linksIter = links.iterator();
-      while (linksIter.hasNext()) {
-        JSONObject link = linksIter.next();
-        String src = (String) link.get("source");
-        String dst = (String) link.get("destination");
-        double lat = (Double) link.get("latency");
-
-        Node srcNode = nameNodeTable.get(src);
-        Node dstNode = nameNodeTable.get(dst);
-
-        Link l = new Link(srcNode, dstNode, lat, -1); // Temporary Link (blueprint) to create the real one in NOS
-        this.links.add(l);
+    read(new JsonArrayStreamReader.ElementHandler() {
+      @Override
+      public void element(String arrayName, Object element) {
+        if ("links".equals(arrayName))
+          parseLink((JSONObject) element);
       }
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
-    }
+    });
+    createPendingLinks();
+  }
+
+  private void parseLink(JSONObject link) {
+    // Keep the order of links if any link waits for its nodes
+    if (pendingLinks.isEmpty() && nameNodeTable.containsKey(link.get("source"))
+        && nameNodeTable.containsKey(link.get("destination")))
+      createLink(link);
+    else
+      pendingLinks.add(link);
+  }
+
+  private void createPendingLinks() {
+    for (JSONObject link : pendingLinks)
+      createLink(link);
+    pendingLinks.clear();
+  }
+
+  private void createLink(JSONObject link) {
+    String src = (String) link.get("source");
+    String dst = (String) link.get("destination");
+    double lat = (Double) link.get("latency");
+
+    Node srcNode = nameNodeTable.get(src);
+    Node dstNode = nameNodeTable.get(dst);
 
+    Link l = new Link(srcNode, dstNode, lat, -1); // Temporary Link (blueprint) to create the real one in NOS
+    this.links.add(l);
   }
 
   public Hashtable<String, Node> getNameNode() {
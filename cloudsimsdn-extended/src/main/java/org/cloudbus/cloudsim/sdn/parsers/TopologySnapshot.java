@@ -0,0 +1,292 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2017, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn.parsers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.Log;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Binary snapshot of the elements read from a topology JSON file, so that runs with the same input
+ * (e.g. parameter sweeps) skip the JSON parsing. A snapshot is named by the SHA-256 hash of the file content,
+ * and is memory-mapped and replayed to the same {@link JsonArrayStreamReader.ElementHandler} as the parser.
+ * It is a parse cache only: nodes, links, routing tables, the path cache and VM placements are still built
+ * from the replayed elements on every run.
+ *
+ * The input is hashed in full on every read, so a changed file never replays a stale snapshot.
+ * Hashing is a sequential read, far cheaper than parsing the JSON.
+ *
+ * Values are written with a type tag; strings are written once and referred to by index afterwards,
+ * so the keys repeated in every element take a few bytes.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class TopologySnapshot {
+	private static final int MAGIC = 0x53444E53;	// "SDNS"
+	private static final int VERSION = 1;
+	private static final int TRAILER = 0x454E4421;	// "END!", written last so a partial file is not used
+
+	private static final byte ENTRY = 1;
+	private static final byte END = 0;
+
+	private static final byte NULL = 0;
+	private static final byte TRUE = 1;
+	private static final byte FALSE = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte STRING = 5;
+	private static final byte OBJECT = 6;
+	private static final byte ARRAY = 7;
+
+	private static final int NEW_STRING = -1;
+
+	/**
+	 * Reads the JSON file through its snapshot in the directory. If there is no snapshot of the current content,
+	 * the file is parsed and the snapshot is written for the next runs.
+	 */
+	public static void read(String filename, String snapshotDir, final JsonArrayStreamReader.ElementHandler handler)
+			throws IOException, ParseException {
+		File dir = new File(snapshotDir);
+		File snapshot = new File(dir, getContentHash(filename) + ".snap");
+
+		if(snapshot.isFile()) {
+			if(replay(snapshot, handler))
+				return;
+			Log.printLine("TopologySnapshot: replacing invalid snapshot " + snapshot);
+			snapshot.delete();
+		}
+
+		dir.mkdirs();
+		File temp = File.createTempFile(snapshot.getName(), ".tmp", dir);
+		boolean complete = false;
+		try (SnapshotWriter writer = new SnapshotWriter(temp)) {
+			JsonArrayStreamReader.parse(filename, new JsonArrayStreamReader.ElementHandler() {
+				@Override
+				public void element(String arrayName, Object element) {
+					writer.write(arrayName, element);
+					handler.element(arrayName, element);
+				}
+			});
+			writer.finish();
+			complete = true;
+		} finally {
+			// Another run with the same input may have written it already; both are the same.
+			if(!complete || !temp.renameTo(snapshot))
+				temp.delete();
+		}
+	}
+
+	public static String getContentHash(String filename) throws IOException {
+		try (InputStream in = new FileInputStream(filename)) {
+			MessageDigest digest = digest();
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while((n = in.read(buffer)) > 0)
+				digest.update(buffer, 0, n);
+			return toHex(digest.digest());
+		}
+	}
+
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for(byte b:bytes)
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/**
+	 * @return false if the snapshot is not complete or not in this format. Nothing is handed over then.
+	 */
+	private static boolean replay(File snapshot, JsonArrayStreamReader.ElementHandler handler) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+				FileChannel channel = file.getChannel()) {
+			long size = channel.size();
+			if(size < 12 || size > Integer.MAX_VALUE)
+				return false;
+
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if(buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getInt((int) size - 4) != TRAILER)
+				return false;
+
+			SnapshotReader reader = new SnapshotReader(buf);
+			while(buf.get() == ENTRY) {
+				String arrayName = reader.readString();
+				handler.element(arrayName, reader.readValue());
+			}
+			return true;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("TopologySnapshot: broken snapshot " + snapshot, e);
+		}
+	}
+
+	private static class SnapshotReader {
+		private final MappedByteBuffer buf;
+		private final List<String> strings = new ArrayList<String>();
+
+		SnapshotReader(MappedByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		String readString() {
+			int idx = buf.getInt();
+			if(idx != NEW_STRING)
+				return strings.get(idx);
+
+			byte[] bytes = new byte[buf.getInt()];
+			buf.get(bytes);
+			String s = new String(bytes, StandardCharsets.UTF_8);
+			strings.add(s);
+			return s;
+		}
+
+		@SuppressWarnings("unchecked")
+		Object readValue() throws IOException {
+			byte tag = buf.get();
+			switch(tag) {
+			case NULL:		return null;
+			case TRUE:		return Boolean.TRUE;
+			case FALSE:		return Boolean.FALSE;
+			case LONG:		return buf.getLong();
+			case DOUBLE:	return buf.getDouble();
+			case STRING:	return readString();
+			case OBJECT: {
+				int n = buf.getInt();
+				JSONObject obj = new JSONObject();
+				for(int i=0; i<n; i++) {
+					String key = readString();
+					obj.put(key, readValue());
+				}
+				return obj;
+			}
+			case ARRAY: {
+				int n = buf.getInt();
+				JSONArray arr = new JSONArray();
+				for(int i=0; i<n; i++)
+					arr.add(readValue());
+				return arr;
+			}
+			default:
+				throw new IOException("TopologySnapshot: unknown value type " + tag);
+			}
+		}
+	}
+
+	private static class SnapshotWriter implements AutoCloseable {
+		private final DataOutputStream out;
+		private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		SnapshotWriter(File file) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+		}
+
+		// Called from the element handler, which cannot throw IOException
+		void write(String arrayName, Object element) {
+			try {
+				out.writeByte(ENTRY);
+				writeString(arrayName);
+				writeValue(element);
+			} catch (IOException e) {
+				throw new RuntimeException("TopologySnapshot: cannot write the snapshot", e);
+			}
+		}
+
+		void finish() throws IOException {
+			out.writeByte(END);
+			out.writeInt(TRAILER);
+		}
+
+		private void writeString(String s) throws IOException {
+			Integer idx = strings.get(s);
+			if(idx != null) {
+				out.writeInt(idx);
+				return;
+			}
+			strings.put(s, strings.size());
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(NEW_STRING);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private void writeValue(Object value) throws IOException {
+			if(value == null) {
+				out.writeByte(NULL);
+			}
+			else if(value instanceof Boolean) {
+				out.writeByte((Boolean) value ? TRUE : FALSE);
+			}
+			else if(value instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long) value);
+			}
+			else if(value instanceof Double) {
+				out.writeByte(DOUBLE);
+				out.writeDouble((Double) value);
+			}
+			else if(value instanceof String) {
+				out.writeByte(STRING);
+				writeString((String) value);
+			}
+			else if(value instanceof JSONObject) {
+				JSONObject obj = (JSONObject) value;
+				out.writeByte(OBJECT);
+				out.writeInt(obj.size());
+				for(Object key:obj.keySet()) {
+					writeString((String) key);
+					writeValue(obj.get(key));
+				}
+			}
+			else if(value instanceof JSONArray) {
+				JSONArray arr = (JSONArray) value;
+				out.writeByte(ARRAY);
+				out.writeInt(arr.size());
+				for(Object v:arr)
+					writeValue(v);
+			}
+			else {
+				throw new IllegalArgumentException("TopologySnapshot: unsupported value " + value.getClass());
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
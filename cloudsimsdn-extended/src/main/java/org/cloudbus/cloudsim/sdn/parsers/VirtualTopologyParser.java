@@ -8,18 +8,17 @@
 
 package org.cloudbus.cloudsim.sdn.parsers;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.cloudbus.cloudsim.CloudletScheduler;
 import org.cloudbus.cloudsim.sdn.CloudletSchedulerSpaceSharedMonitor;
+import org.cloudbus.cloudsim.sdn.CloudletSchedulerVirtualTimeMonitor;
 import org.cloudbus.cloudsim.sdn.Configuration;
 import org.cloudbus.cloudsim.sdn.sfc.ServiceFunction;
 import org.cloudbus.cloudsim.sdn.sfc.ServiceFunctionChainPolicy;
@@ -27,7 +26,7 @@ import org.cloudbus.cloudsim.sdn.virtualcomponents.FlowConfig;
 import org.cloudbus.cloudsim.sdn.virtualcomponents.SDNVm;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
@@ -35,6 +34,8 @@ import com.google.common.collect.Multimap;
 /**
  * This class parses Virtual Topology (VMs, Network flows between VMs, and SFCs).
  * It loads Virtual Topology JSON file and creates relevant objects in the simulation.
+ * The file is read once as a stream (see {@link JsonArrayStreamReader}); links and policies
+ * are created as they are read, unless they refer to VMs or flows further in the file.
  * 
  * @author Jungmin Son
  * @since CloudSimSDN 1.0
@@ -53,6 +54,13 @@ public class VirtualTopologyParser {
 
 	private String defaultDatacenter;
 	
+	private Hashtable<String, Integer> vmNameIdTable = new Hashtable<String, Integer>();
+	private Hashtable<String, Integer> flowNameIdTable = new Hashtable<String, Integer>();
+	
+	// Links and policies read before the VMs or flows they refer to, created at the end of the file
+	private List<JSONObject> pendingLinks = new LinkedList<JSONObject>();
+	private List<JSONObject> pendingPolicies = new LinkedList<JSONObject>();
+	
 	public VirtualTopologyParser(String datacenterName, String topologyFileName, int userId) {
 		vmList = HashMultimap.create();
 		this.vmsFileName = topologyFileName;
@@ -65,198 +73,205 @@ public class VirtualTopologyParser {
 	private void parse() {
 
 		try {
-    		JSONObject doc = (JSONObject) JSONValue.parse(new FileReader(vmsFileName));
-    		
-    		Hashtable<String, Integer> vmNameIdTable = parseVMs(doc);
-    		Hashtable<String, Integer> flowNameIdTable = parseLinks(doc, vmNameIdTable);
-    		parseSFCPolicies(doc, vmNameIdTable, flowNameIdTable);
+			JsonArrayStreamReader.read(vmsFileName, new JsonArrayStreamReader.ElementHandler() {
+				@Override
+				public void element(String arrayName, Object element) {
+					if("nodes".equals(arrayName))
+						parseVM((JSONObject) element);
+					else if("links".equals(arrayName))
+						parseLink((JSONObject) element);
+					else if("policies".equals(arrayName))
+						parseSFCPolicy((JSONObject) element);
+				}
+			});
+			
+			for(JSONObject link:pendingLinks)
+				createLink(link);
+			for(JSONObject policy:pendingPolicies)
+				createSFCPolicy(policy);
+			pendingLinks.clear();
+			pendingPolicies.clear();
     		
-		} catch (FileNotFoundException e) {
+		} catch (IOException | ParseException e) {
 			e.printStackTrace();
 		}
 	}
 	
-	private Hashtable<String, Integer> parseVMs(JSONObject doc) {
-		Hashtable<String, Integer> vmNameIdTable = new Hashtable<String, Integer>();
-
-		// Parse VM nodes  
-		JSONArray nodes = (JSONArray) doc.get("nodes");
+	private void parseVM(JSONObject node) {
+		String nodeType = (String) node.get("type");
+		String nodeName = (String) node.get("name");
+		int pes = new BigDecimal((Long)node.get("pes")).intValueExact();
+		long mips = (Long) node.get("mips");
+		int ram = new BigDecimal((Long)node.get("ram")).intValueExact();
+		long size = (Long) node.get("size");
+		long bw = 0;
 		
-		@SuppressWarnings("unchecked")
-		Iterator<JSONObject> iter = nodes.iterator(); 
-		while(iter.hasNext()){
-			JSONObject node = iter.next();
-			
-			String nodeType = (String) node.get("type");
-			String nodeName = (String) node.get("name");
-			int pes = new BigDecimal((Long)node.get("pes")).intValueExact();
-			long mips = (Long) node.get("mips");
-			int ram = new BigDecimal((Long)node.get("ram")).intValueExact();
-			long size = (Long) node.get("size");
-			long bw = 0;
-			
-			if(node.get("bw") != null)
-				bw = (Long) node.get("bw");
-			
-			double starttime = 0;
-			double endtime = Double.POSITIVE_INFINITY;
-			if(node.get("starttime") != null)
-				starttime = (Double) node.get("starttime");
-			if(node.get("endtime") != null)
-				endtime = (Double) node.get("endtime");
-			
-			String dcName = this.defaultDatacenter;
-			if(node.get("datacenter") != null)
-				dcName = (String)node.get("datacenter");
-
-			// Optional datacenter specifies the alternative data center if 'data center' has no more resource.
-			ArrayList<String> optionalDatacenter = null;
-			if(node.get("subdatacenters") != null) {
-				optionalDatacenter = new ArrayList<>();				
-				JSONArray subDCs = (JSONArray)node.get("subdatacenters");
-				
-				for (int i=0;i<subDCs.size();i++){
-					String subdc = subDCs.get(i).toString();
-					optionalDatacenter.add(subdc);
-				}
-			}
-			
-			String hostName = "";
-			if(node.get("host") != null)
-				hostName = (String)node.get("host");
+		if(node.get("bw") != null)
+			bw = (Long) node.get("bw");
+		
+		double starttime = 0;
+		double endtime = Double.POSITIVE_INFINITY;
+		if(node.get("starttime") != null)
+			starttime = (Double) node.get("starttime");
+		if(node.get("endtime") != null)
+			endtime = (Double) node.get("endtime");
+		
+		String dcName = this.defaultDatacenter;
+		if(node.get("datacenter") != null)
+			dcName = (String)node.get("datacenter");
 
-			long nums =1;
-			if(node.get("nums") != null)
-				nums = (Long) node.get("nums");
+		// Optional datacenter specifies the alternative data center if 'data center' has no more resource.
+		ArrayList<String> optionalDatacenter = null;
+		if(node.get("subdatacenters") != null) {
+			optionalDatacenter = new ArrayList<>();				
+			JSONArray subDCs = (JSONArray)node.get("subdatacenters");
 			
-			for(int n=0; n<nums; n++) {
-				String nodeName2 = nodeName;
-				if(nums > 1) {
-					// Nodename should be numbered.
-					nodeName2 = nodeName + n;
-				}
-				
-				CloudletScheduler clSch = new CloudletSchedulerSpaceSharedMonitor(Configuration.TIME_OUT);
-				//CloudletScheduler clSch = new CloudletSchedulerTimeSharedMonitor(mips);
-				int vmId = SDNVm.getUniqueVmId();
-				
-				if(nodeType.equalsIgnoreCase("vm")){
-					// Create VM objects						
-					SDNVm vm = new SDNVm(vmId, userId,mips,pes,ram,bw,size,"VMM", clSch, starttime, endtime);
-					vm.setName(nodeName2);
-					vm.setHostName(hostName);
-					vm.setOptionalDatacenters(optionalDatacenter);
-					vmList.put(dcName, vm);
-				}
-				else {
-					// Create ServiceFunction objects
-					ServiceFunction sf = new ServiceFunction(vmId,userId,mips,pes,ram,bw,size,"VMM", clSch, starttime, endtime);
-					long mipOperation = (Long) node.get("mipoper");
-					
-					sf.setName(nodeName2);
-					sf.setHostName(hostName);
-					sf.setOptionalDatacenters(optionalDatacenter);
-					sf.setMIperOperation(mipOperation);
-					
-					sf.setMiddleboxType(nodeType);
-					vmList.put(dcName, sf);
-					sfList.add(sf);
-				}
-				
-				vmNameIdTable.put(nodeName2, vmId);
+			for (int i=0;i<subDCs.size();i++){
+				String subdc = subDCs.get(i).toString();
+				optionalDatacenter.add(subdc);
 			}
 		}
 		
-		return vmNameIdTable;
-	}
-	
-	private Hashtable<String, Integer> parseLinks(JSONObject doc, Hashtable<String, Integer> vmNameIdTable) {
-		Hashtable<String, Integer> flowNameIdTable = new Hashtable<String, Integer>();
-		
-		// Parse VM-VM links
-		JSONArray links = (JSONArray) doc.get("links");
+		String hostName = "";
+		if(node.get("host") != null)
+			hostName = (String)node.get("host");
+
+		long nums =1;
+		if(node.get("nums") != null)
+			nums = (Long) node.get("nums");
 		
-		@SuppressWarnings("unchecked")
-		Iterator<JSONObject> linksIter = links.iterator(); 
-		while(linksIter.hasNext()){
-			JSONObject link = linksIter.next();
-			String name = (String) link.get("name");
-			String src = (String) link.get("source");  
-			String dst = (String) link.get("destination");
-			
-			Object reqLat = link.get("latency");
-			Object reqBw = link.get("bandwidth");
-			
-			double lat = 0.0;
-			long bw = 0;
-			
-			if(reqLat != null)
-				lat = (Double) reqLat;
-			if(reqBw != null)
-				bw = (Long) reqBw;
-			
-			int srcId = vmNameIdTable.get(src);
-			int dstId = vmNameIdTable.get(dst);
+		for(int n=0; n<nums; n++) {
+			String nodeName2 = nodeName;
+			if(nums > 1) {
+				// Nodename should be numbered.
+				nodeName2 = nodeName + n;
+			}
 			
-			int flowId = -1;
+			CloudletScheduler clSch = Configuration.CLOUDLET_SCHEDULER_VIRTUAL_TIME ?
+					new CloudletSchedulerVirtualTimeMonitor(mips, Configuration.TIME_OUT) :
+					new CloudletSchedulerSpaceSharedMonitor(Configuration.TIME_OUT);
+			//CloudletScheduler clSch = new CloudletSchedulerTimeSharedMonitor(mips);
+			int vmId = SDNVm.getUniqueVmId();
 			
-			if(name == null || "default".equalsIgnoreCase(name)) {
-				// default flow.
-				flowId = -1;
+			if(nodeType.equalsIgnoreCase("vm")){
+				// Create VM objects						
+				SDNVm vm = new SDNVm(vmId, userId,mips,pes,ram,bw,size,"VMM", clSch, starttime, endtime);
+				vm.setName(nodeName2);
+				vm.setHostName(hostName);
+				vm.setOptionalDatacenters(optionalDatacenter);
+				vmList.put(dcName, vm);
 			}
 			else {
-				flowId = flowNumbers++;
-			}
-			
-			FlowConfig arc = new FlowConfig(srcId, dstId, flowId, bw, lat);
-			if(flowId != -1) {
-				arc.setName(name);
+				// Create ServiceFunction objects
+				ServiceFunction sf = new ServiceFunction(vmId,userId,mips,pes,ram,bw,size,"VMM", clSch, starttime, endtime);
+				long mipOperation = (Long) node.get("mipoper");
+				
+				sf.setName(nodeName2);
+				sf.setHostName(hostName);
+				sf.setOptionalDatacenters(optionalDatacenter);
+				sf.setMIperOperation(mipOperation);
+				
+				sf.setMiddleboxType(nodeType);
+				vmList.put(dcName, sf);
+				sfList.add(sf);
 			}
 			
-			arcList.add(arc);
-			flowNameIdTable.put(name, flowId);
+			vmNameIdTable.put(nodeName2, vmId);
 		}
-		return flowNameIdTable;
 	}
 	
-	private void parseSFCPolicies(JSONObject doc, Hashtable<String, Integer> vmNameIdTable, Hashtable<String, Integer> flowNameIdTable) {
-		// Parse SFC policies
-		JSONArray policies = (JSONArray)doc.get("policies");
+	private void parseLink(JSONObject link) {
+		// Keep the order of links (and flow IDs) if any link waits for its VMs
+		if(pendingLinks.isEmpty() && vmNameIdTable.containsKey(link.get("source"))
+				&& vmNameIdTable.containsKey(link.get("destination")))
+			createLink(link);
+		else
+			pendingLinks.add(link);
+	}
+	
+	private void createLink(JSONObject link) {
+		String name = (String) link.get("name");
+		String src = (String) link.get("source");  
+		String dst = (String) link.get("destination");
 		
-		if(policies == null)
-			return;
+		Object reqLat = link.get("latency");
+		Object reqBw = link.get("bandwidth");
 		
-		@SuppressWarnings("unchecked")
-		Iterator<JSONObject> policyIter = policies.iterator(); 
-		while(policyIter.hasNext()){
-			JSONObject policy = policyIter.next();
-			String name = (String) policy.get("name");
-			String src = (String) policy.get("source");  
-			String dst = (String) policy.get("destination");
-			String flowname = (String) policy.get("flowname");
-			Double expectedTime = (Double)policy.get("expected_time");
-			if(expectedTime == null) {
-				expectedTime = Double.POSITIVE_INFINITY;
-			}
-			
-			int srcId = vmNameIdTable.get(src);
-			int dstId = vmNameIdTable.get(dst);
-			int flowId = flowNameIdTable.get(flowname);
-			
-			JSONArray sfc = (JSONArray)policy.get("sfc");
-			ArrayList<Integer> sfcList = new ArrayList<Integer>();
-			for (int i=0;i<sfc.size();i++){
-				String sfName = sfc.get(i).toString();
-				int sfVmId =  vmNameIdTable.get(sfName);
-				sfcList.add(sfVmId);
-			} 
-			
-			ServiceFunctionChainPolicy pol = new ServiceFunctionChainPolicy(srcId, dstId, flowId, sfcList, expectedTime);
-			if(name != null)
-				pol.setName(name);
-			
-			policyList.add(pol);
+		double lat = 0.0;
+		long bw = 0;
+		
+		if(reqLat != null)
+			lat = (Double) reqLat;
+		if(reqBw != null)
+			bw = (Long) reqBw;
+		
+		int srcId = vmNameIdTable.get(src);
+		int dstId = vmNameIdTable.get(dst);
+		
+		int flowId = -1;
+		
+		if(name == null || "default".equalsIgnoreCase(name)) {
+			// default flow.
+			flowId = -1;
+		}
+		else {
+			flowId = flowNumbers++;
 		}
+		
+		FlowConfig arc = new FlowConfig(srcId, dstId, flowId, bw, lat);
+		if(flowId != -1) {
+			arc.setName(name);
+		}
+		
+		arcList.add(arc);
+		flowNameIdTable.put(name, flowId);
+	}
+	
+	private void parseSFCPolicy(JSONObject policy) {
+		if(pendingLinks.isEmpty() && pendingPolicies.isEmpty() && isKnown(policy))
+			createSFCPolicy(policy);
+		else
+			pendingPolicies.add(policy);
+	}
+	
+	private boolean isKnown(JSONObject policy) {
+		if(!vmNameIdTable.containsKey(policy.get("source")) || !vmNameIdTable.containsKey(policy.get("destination"))
+				|| !flowNameIdTable.containsKey(policy.get("flowname")))
+			return false;
+		for(Object sfName:(JSONArray)policy.get("sfc")) {
+			if(!vmNameIdTable.containsKey(sfName.toString()))
+				return false;
+		}
+		return true;
+	}
+	
+	private void createSFCPolicy(JSONObject policy) {
+		String name = (String) policy.get("name");
+		String src = (String) policy.get("source");  
+		String dst = (String) policy.get("destination");
+		String flowname = (String) policy.get("flowname");
+		Double expectedTime = (Double)policy.get("expected_time");
+		if(expectedTime == null) {
+			expectedTime = Double.POSITIVE_INFINITY;
+		}
+		
+		int srcId = vmNameIdTable.get(src);
+		int dstId = vmNameIdTable.get(dst);
+		int flowId = flowNameIdTable.get(flowname);
+		
+		JSONArray sfc = (JSONArray)policy.get("sfc");
+		ArrayList<Integer> sfcList = new ArrayList<Integer>();
+		for (int i=0;i<sfc.size();i++){
+			String sfName = sfc.get(i).toString();
+			int sfVmId =  vmNameIdTable.get(sfName);
+			sfcList.add(sfVmId);
+		} 
+		
+		ServiceFunctionChainPolicy pol = new ServiceFunctionChainPolicy(srcId, dstId, flowId, sfcList, expectedTime);
+		if(name != null)
+			pol.setName(name);
+		
+		policyList.add(pol);
 	}
 
 	public Collection<SDNVm> getVmList(String dcName) {
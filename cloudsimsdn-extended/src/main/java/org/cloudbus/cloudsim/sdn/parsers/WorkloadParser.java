@@ -137,10 +137,15 @@ public class WorkloadParser {
     cloudletLen *= Configuration.CPU_SIZE_MULTIPLY;
 
     Request req = new Request(userId);
-    Cloudlet cl = generateCloudlet(req.getRequestId(), fromVmId, (int) cloudletLen);
-    // this.parsedCloudlets.add(cl);
+    Processing proc;
+    if (Configuration.ANALYTIC_COMPUTE) {
+      proc = new Processing((int) req.getRequestId(), fromVmId, userId, (int) cloudletLen);
+    } else {
+      Cloudlet cl = generateCloudlet(req.getRequestId(), fromVmId, (int) cloudletLen);
+      // this.parsedCloudlets.add(cl);
 
-    Processing proc = new Processing(cl);
+      proc = new Processing(cl);
+    }
     req.addActivity(proc);
 
     if (lineitems.size() != 0) {
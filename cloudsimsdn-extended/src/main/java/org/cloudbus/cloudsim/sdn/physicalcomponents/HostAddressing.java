@@ -0,0 +1,109 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn.physicalcomponents;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structured addresses of the hosts in a datacenter: each host belongs to a rack (edge switch),
+ * and each rack to a pod. Switches hold range routes to a rack, a pod, or all hosts of the datacenter
+ * (see {@link RoutingTable#addRangeRoute(HostAddressing, int, int, Link)}) instead of one route per host.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class HostAddressing {
+	public static final int LEVEL_RACK = 0;
+	public static final int LEVEL_POD = 1;
+	public static final int LEVEL_ALL = 2;	// All hosts; group is 0
+
+	private static int nextId = 0;
+
+	private final int id = nextId++;
+
+	private Map<Node, Integer> rackOfHost = new HashMap<Node, Integer>();
+	private List<List<Node>> hostsOfRack = new ArrayList<List<Node>>();
+	private List<Integer> podOfRack = new ArrayList<Integer>();
+	private List<List<Integer>> racksOfPod = new ArrayList<List<Integer>>();
+	private List<Node> hosts = new ArrayList<Node>();
+
+	public int addPod() {
+		racksOfPod.add(new ArrayList<Integer>());
+		return racksOfPod.size() - 1;
+	}
+
+	public int addRack(int pod) {
+		int rack = hostsOfRack.size();
+		hostsOfRack.add(new ArrayList<Node>());
+		podOfRack.add(pod);
+		racksOfPod.get(pod).add(rack);
+		return rack;
+	}
+
+	/**
+	 * Puts the host in the rack, if it has no address yet.
+	 *
+	 * @return false if the host already belongs to a rack
+	 */
+	public boolean addHost(Node host, int rack) {
+		if(rackOfHost.containsKey(host))
+			return false;
+		rackOfHost.put(host, rack);
+		hostsOfRack.get(rack).add(host);
+		hosts.add(host);
+		return true;
+	}
+
+	/**
+	 * @return the rack of the host, or -1 if the host is not addressed here
+	 */
+	public int getRack(Node host) {
+		Integer rack = rackOfHost.get(host);
+		return rack == null ? -1 : rack;
+	}
+
+	public int getPodOfRack(int rack) {
+		return podOfRack.get(rack);
+	}
+
+	/**
+	 * Key of a range route, unique among all addressings.
+	 */
+	long getKey(int level, int group) {
+		return ((long)id << 34) | ((long)level << 32) | (group & 0xffffffffL);
+	}
+
+	/**
+	 * @return the hosts in the rack, the pod, or all hosts
+	 */
+	public List<Node> getHosts(int level, int group) {
+		switch(level) {
+		case LEVEL_RACK:
+			return Collections.unmodifiableList(hostsOfRack.get(group));
+		case LEVEL_POD:
+			List<Node> podHosts = new ArrayList<Node>();
+			for(int rack:racksOfPod.get(group))
+				podHosts.addAll(hostsOfRack.get(rack));
+			return podHosts;
+		default:
+			return Collections.unmodifiableList(hosts);
+		}
+	}
+
+	public static String getLevelName(int level) {
+		switch(level) {
+		case LEVEL_RACK:	return "rack";
+		case LEVEL_POD:		return "pod";
+		default:			return "all";
+		}
+	}
+}
@@ -8,9 +8,10 @@
 
 package org.cloudbus.cloudsim.sdn.physicalcomponents;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 
+import org.cloudbus.cloudsim.sdn.Configuration;
 import org.cloudbus.cloudsim.sdn.LogWriter;
 import org.cloudbus.cloudsim.sdn.monitor.MonitoringValues;
 import org.cloudbus.cloudsim.sdn.virtualcomponents.Channel;
@@ -31,8 +32,17 @@ public class Link {
 	private double downBW;	// high -> low
 	private double latency;	// in milliseconds, need to *0.001 to transform in seconds.
 	
-	private List<Channel> upChannels;
-	private List<Channel> downChannels;
+	private Collection<Channel> upChannels;
+	private Collection<Channel> downChannels;
+	
+	// Running aggregates of dedicated channels per direction.
+	// Updated incrementally when a channel is added/removed or its bandwidth changes, instead of walking the channels.
+	private int dedicatedChannelCountUp = 0;
+	private int dedicatedChannelCountDown = 0;
+	private double allocatedBandwidthDedicatedUp = 0;
+	private double allocatedBandwidthDedicatedDown = 0;
+	private double requestedBandwidthDedicatedUp = 0;
+	private double requestedBandwidthDedicatedDown = 0;
 	
 	public Link(Node highOrder, Node lowOrder, double latency, double bw) {
 		this.highOrder = highOrder;
@@ -40,8 +50,8 @@ public class Link {
 		this.upBW = this.downBW = bw;
 		this.latency = latency;
 		
-		this.upChannels = new LinkedList<Channel>();
-		this.downChannels = new LinkedList<Channel>();
+		this.upChannels = new LinkedHashSet<Channel>();
+		this.downChannels = new LinkedHashSet<Channel>();
 	}
 	
 	public Link(Node highOrder, Node lowOrder, double latency, double upBW, double downBW) {
@@ -64,7 +74,7 @@ public class Link {
 		return highOrder;
 	}
 	
-	private boolean isUplink(Node from) {
+	public boolean isUplink(Node from) {
 		if(from == lowOrder) {
 			return true;
 		}
@@ -100,8 +110,11 @@ public class Link {
 		return latency*0.001;
 	}
 	
-	private List<Channel> getChannels(Node from) {
-		List<Channel> channels;
+	/**
+	 * @return channels sending from the node over this link (live view, do not modify).
+	 */
+	public Collection<Channel> getChannels(Node from) {
+		Collection<Channel> channels;
 		if(isUplink(from)) {
 			channels = this.upChannels;
 		}
@@ -123,48 +136,108 @@ public class Link {
 	}
 	
 	public boolean addChannel(Node from, Channel ch) {
-		getChannels(from).add(ch);
-		updateRequestedBandwidthForDedicatedChannels(from);
+		if(!getChannels(from).add(ch))
+			return false;
+		
+		if(ch.getChId() != -1) {
+			// chId == -1 : default channel. Only 'Dedicated' channels are counted.
+			addDedicatedAggregates(from, 1, ch.getRequestedBandwidth(), ch.getAllocatedBandwidth());
+		}
+		checkAggregates(from);
 		return true;
 	}
 	
 	public boolean removeChannel(Node from, Channel ch) {
 		boolean ret = getChannels(from).remove(ch);
-		updateRequestedBandwidthForDedicatedChannels(from);
+		if(ret && ch.getChId() != -1) {
+			addDedicatedAggregates(from, -1, -ch.getRequestedBandwidth(), -ch.getAllocatedBandwidth());
+		}
+		checkAggregates(from);
 		return ret;
 	}
 	
-	public void updateChannel(Node from, Channel ch) {
-		updateRequestedBandwidthForDedicatedChannels(from);
+	/**
+	 * Called by the channel when its requested bandwidth is changed.
+	 */
+	public void updateRequestedBandwidth(Node from, Channel ch, double oldRequestedBw) {
+		if(ch.getChId() != -1 && getChannels(from).contains(ch)) {
+			addDedicatedAggregates(from, 0, ch.getRequestedBandwidth() - oldRequestedBw, 0);
+		}
+		checkAggregates(from);
 	}
 	
-	/*
-	private double allocatedBandwidthDedicatedUp = 0;
-	private double allocatedBandwidthDedicatedDown = 0;
+	/**
+	 * Called by the channel when its allocated bandwidth is changed.
+	 */
+	public void updateAllocatedBandwidth(Node from, Channel ch, double oldAllocatedBw) {
+		if(ch.getChId() != -1 && getChannels(from).contains(ch)) {
+			addDedicatedAggregates(from, 0, 0, ch.getAllocatedBandwidth() - oldAllocatedBw);
+		}
+		checkAggregates(from);
+	}
 	
-	private double getAllocatedBandwidthForDedicatedChannels(Node from) {
-		if(this.isUplink(from))
-			return allocatedBandwidthDedicatedUp;
-		else
-			return allocatedBandwidthDedicatedDown;
+	private void addDedicatedAggregates(Node from, int count, double requestedBw, double allocatedBw) {
+		if(isUplink(from)) {
+			dedicatedChannelCountUp += count;
+			requestedBandwidthDedicatedUp += requestedBw;
+			allocatedBandwidthDedicatedUp += allocatedBw;
+			if(dedicatedChannelCountUp == 0) {
+				// Drop the rounding error accumulated by incremental updates
+				requestedBandwidthDedicatedUp = 0;
+				allocatedBandwidthDedicatedUp = 0;
+			}
+		}
+		else {
+			dedicatedChannelCountDown += count;
+			requestedBandwidthDedicatedDown += requestedBw;
+			allocatedBandwidthDedicatedDown += allocatedBw;
+			if(dedicatedChannelCountDown == 0) {
+				requestedBandwidthDedicatedDown = 0;
+				allocatedBandwidthDedicatedDown = 0;
+			}
+		}
 	}
-	*/
-
-	private double getAllocatedBandwidthForDedicatedChannels(Node from) {
+	
+	/**
+	 * Debug only (Configuration.DEBUG_CHECK_LINK_AGGREGATES): recomputes the aggregates
+	 * by walking the channels and compares them with the running values.
+	 */
+	private void checkAggregates(Node from) {
+		if(!Configuration.DEBUG_CHECK_LINK_AGGREGATES)
+			return;
 		
-		double bw=0;
+		int num=0;
+		double requestedBw=0;
+		double allocatedBw=0;
 		for(Channel ch: getChannels(from)) {
 			if(ch.getChId() != -1) {
-				// chId == -1 : default channel
-				bw += ch.getAllocatedBandwidth();
+				num++;
+				requestedBw += ch.getRequestedBandwidth();
+				allocatedBw += ch.getAllocatedBandwidth();
 			}
 		}
-		return bw;
+		
+		if(num != getDedicatedChannelCount(from)
+				|| !isAlmostEqual(requestedBw, getRequestedBandwidthForDedicatedChannels(from))
+				|| !isAlmostEqual(allocatedBw, getAllocatedBandwidthForDedicatedChannels(from))) {
+			throw new RuntimeException("Link.checkAggregates(): aggregates are inconsistent! "+this+", from:"+from
+					+", dedicated channels="+getDedicatedChannelCount(from)+"(expected "+num+")"
+					+", requested="+getRequestedBandwidthForDedicatedChannels(from)+"(expected "+requestedBw+")"
+					+", allocated="+getAllocatedBandwidthForDedicatedChannels(from)+"(expected "+allocatedBw+")");
+		}
 	}
-
-	private double requestedBandwidthDedicatedUp = 0;
-	private double requestedBandwidthDedicatedDown = 0;
 	
+	private static boolean isAlmostEqual(double a, double b) {
+		return Math.abs(a - b) <= 1e-6 * Math.max(1.0, Math.max(Math.abs(a), Math.abs(b)));
+	}
+
+	private double getAllocatedBandwidthForDedicatedChannels(Node from) {
+		if(this.isUplink(from))
+			return allocatedBandwidthDedicatedUp;
+		else
+			return allocatedBandwidthDedicatedDown;
+	}
+
 	private double getRequestedBandwidthForDedicatedChannels(Node from) {
 		if(this.isUplink(from))
 			return requestedBandwidthDedicatedUp;
@@ -172,37 +245,15 @@ public class Link {
 			return requestedBandwidthDedicatedDown;
 	}
 
-	private void updateRequestedBandwidthForDedicatedChannels(Node from) {
-		// Look through all busy channel and sum up the amount of total requested bandwidth.
-		double bw=0;
-		for(Channel ch: getChannels(from)) {
-			if(ch.getChId() != -1) {
-				// chId == -1 : default channel
-				bw += ch.getRequestedBandwidth(); // Only counted for 'Dedicated' channels
-			}
-		}
-		if(isUplink(from)) {
-			requestedBandwidthDedicatedUp = bw;
-		}
-		else{
-			requestedBandwidthDedicatedDown = bw;
-		}
-	}
-
 	public int getChannelCount(Node from) {
-		List<Channel> channels =  getChannels(from);
-		return channels.size();
+		return getChannels(from).size();
 	}
 	
 	public int getDedicatedChannelCount(Node from) {
-		int num=0;
-		for(Channel ch: getChannels(from)) {
-			if(ch.getChId() != -1) {
-				// chId == -1 : default channel
-				num ++;
-			}
-		}
-		return num;
+		if(this.isUplink(from))
+			return dedicatedChannelCountUp;
+		else
+			return dedicatedChannelCountDown;
 	}
 	
 	public int getSharedChannelCount(Node from) {
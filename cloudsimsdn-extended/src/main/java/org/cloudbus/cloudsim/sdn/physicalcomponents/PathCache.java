@@ -0,0 +1,277 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn.physicalcomponents;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.sdn.LongHashMap;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * Cache of the equal-cost paths between two hosts, following the candidate links of the routing tables.
+ * Each path is stored as an array of link indices, with a stable path ID and its total latency,
+ * so that channels and latency queries do not rebuild the node and link lists hop by hop.
+ *
+ * The paths of all host pairs are enumerated once the routes are built (PhysicalTopology.buildPathCache()),
+ * or of a host pair on its first query. A route walked from the forwarding rules is looked up among the enumerated paths,
+ * and kept as a walked path only if it is not one of them (e.g. dynamic routes).
+ * When a link changes, only the host pairs with a path through it are dropped; their paths become invalid
+ * and new IDs are given when enumerated again.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class PathCache {
+	private static final int MAX_PATHS_PER_PAIR = 256;	// Stop enumerating beyond this (e.g. default routes across datacenters)
+
+	private LongHashMap<List<Path>> paths = new LongHashMap<List<Path>>();	// getKey(src host, dst host) -> Paths
+	private LongHashMap<List<Path>> walkedPaths = new LongHashMap<List<Path>>();	// getKey(src host, dst host) -> Paths added by findPath
+	private Multimap<Link, Long> pairsByLink = LinkedHashMultimap.create();	// Link -> host pairs with a path through it
+
+	// Link index <-> Link
+	private Map<Link, Integer> linkIndex = new HashMap<Link, Integer>();
+	private List<Link> linkList = new ArrayList<Link>();
+
+	private int nextPathId = 0;
+
+	private static long getKey(Node src, Node dst) {
+		return ((long)src.getAddress() << 32) | (dst.getAddress() & 0xffffffffL);
+	}
+
+	/**
+	 * Equal-cost paths from a host to another host, in the order of the candidate links.
+	 */
+	public List<Path> getPaths(Node src, Node dst) {
+		long key = getKey(src, dst);
+		List<Path> pairPaths = paths.get(key);
+		if(pairPaths == null) {
+			pairPaths = new ArrayList<Path>();
+			if(src.equals(dst)) {
+				Link loopback = src.getLinkTo(src);
+				if(loopback != null)
+					pairPaths.add(newPath(new Node[] {src, src}, new Link[] {loopback}));
+			}
+			else {
+				List<Node> nodes = new ArrayList<Node>();
+				nodes.add(src);
+				enumerate(src, dst, nodes, new ArrayList<Link>(), pairPaths);
+			}
+			putPaths(key, pairPaths);
+		}
+		return pairPaths;
+	}
+
+	private void enumerate(Node node, Node dst, List<Node> nodes, List<Link> links, List<Path> result) {
+		if(node.equals(dst)) {
+			result.add(newPath(nodes.toArray(new Node[nodes.size()]), links.toArray(new Link[links.size()])));
+			return;
+		}
+		List<Link> candidates = node.getRoute(dst);
+		if(candidates == null)
+			return;
+
+		for(Link link:candidates) {
+			if(result.size() >= MAX_PATHS_PER_PAIR)
+				return;
+			Node next = link.getOtherNode(node);
+			if(nodes.contains(next))
+				continue;	// No loops
+			nodes.add(next);
+			links.add(link);
+			enumerate(next, dst, nodes, links, result);
+			nodes.remove(nodes.size()-1);
+			links.remove(links.size()-1);
+		}
+	}
+
+	/**
+	 * Finds the path with the given nodes and links among the equal-cost paths of the host pair,
+	 * or adds it as a walked path.
+	 */
+	public Path findPath(List<Node> nodes, List<Link> links) {
+		Node src = nodes.get(0);
+		Node dst = nodes.get(nodes.size()-1);
+		int[] ids = new int[links.size()];
+		for(int i=0; i<ids.length; i++)
+			ids[i] = getLinkIndex(links.get(i));
+
+		long key = getKey(src, dst);
+		Path p = findPath(getPaths(src, dst), ids);
+		if(p != null)
+			return p;
+
+		List<Path> walked = walkedPaths.get(key);
+		p = findPath(walked, ids);
+		if(p != null)
+			return p;
+
+		if(walked == null) {
+			walked = new ArrayList<Path>();
+			walkedPaths.put(key, walked);
+		}
+		p = newPath(nodes.toArray(new Node[nodes.size()]), links.toArray(new Link[links.size()]));
+		walked.add(p);
+		for(Link l:links)
+			pairsByLink.put(l, key);
+		return p;
+	}
+
+	private static Path findPath(List<Path> pairPaths, int[] ids) {
+		if(pairPaths == null)
+			return null;
+		for(Path p:pairPaths) {
+			if(Arrays.equals(p.linkIds, ids))
+				return p;
+		}
+		return null;
+	}
+
+	private void putPaths(long key, List<Path> pairPaths) {
+		paths.put(key, pairPaths);
+		for(Path p:pairPaths) {
+			for(int id:p.linkIds)
+				pairsByLink.put(linkList.get(id), key);
+		}
+	}
+
+	private Path newPath(Node[] nodes, Link[] links) {
+		int[] ids = new int[links.length];
+		double latency = 0;
+		for(int i=0; i<links.length; i++) {
+			ids[i] = getLinkIndex(links[i]);
+			latency += links[i].getLatencyInSeconds();
+		}
+		return new Path(nextPathId++, nodes, ids, latency);
+	}
+
+	private int getLinkIndex(Link link) {
+		Integer idx = linkIndex.get(link);
+		if(idx == null) {
+			idx = linkList.size();
+			linkIndex.put(link, idx);
+			linkList.add(link);
+		}
+		return idx;
+	}
+
+	/**
+	 * Drops the paths through the link. Called when the link or the routes over it change.
+	 */
+	public void invalidateLink(Link link) {
+		for(Long key:new ArrayList<Long>(pairsByLink.get(link))) {
+			invalidatePaths(paths.remove(key), key);
+			invalidatePaths(walkedPaths.remove(key), key);
+		}
+	}
+
+	private void invalidatePaths(List<Path> pairPaths, long key) {
+		if(pairPaths == null)
+			return;
+		for(Path p:pairPaths) {
+			p.valid = false;
+			for(int id:p.linkIds)
+				pairsByLink.remove(linkList.get(id), key);
+		}
+	}
+
+	public void clear() {
+		for(List<Path> pairPaths:paths.values()) {
+			for(Path p:pairPaths)
+				p.valid = false;
+		}
+		for(List<Path> pairPaths:walkedPaths.values()) {
+			for(Path p:pairPaths)
+				p.valid = false;
+		}
+		paths.clear();
+		walkedPaths.clear();
+		pairsByLink.clear();
+	}
+
+	/**
+	 * A path between two hosts. Valid until a link on it is invalidated.
+	 */
+	public class Path {
+		private final int id;
+		private final Node[] nodes;
+		private final int[] linkIds;
+		private final double latency;
+		private boolean valid = true;
+
+		private final List<Node> nodeView;
+		private final List<Link> linkView;
+
+		private Path(int id, Node[] nodes, int[] linkIds, double latency) {
+			this.id = id;
+			this.nodes = nodes;
+			this.linkIds = linkIds;
+			this.latency = latency;
+			this.nodeView = Collections.unmodifiableList(Arrays.asList(nodes));
+			this.linkView = new AbstractList<Link>() {
+				@Override
+				public Link get(int index) {
+					return linkList.get(Path.this.linkIds[index]);
+				}
+
+				@Override
+				public int size() {
+					return Path.this.linkIds.length;
+				}
+			};
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public Node getSource() {
+			return nodes[0];
+		}
+
+		public Node getDestination() {
+			return nodes[nodes.length-1];
+		}
+
+		/**
+		 * Nodes on the path including both hosts. The list is shared and cannot be modified.
+		 */
+		public List<Node> getNodes() {
+			return nodeView;
+		}
+
+		/**
+		 * Links on the path; link i goes from node i to node i+1. The list is shared and cannot be modified.
+		 */
+		public List<Link> getLinks() {
+			return linkView;
+		}
+
+		/**
+		 * @return total latency of the links in seconds
+		 */
+		public double getLatency() {
+			return latency;
+		}
+
+		public boolean isValid() {
+			return valid;
+		}
+
+		public String toString() {
+			return "Path#" + id + nodeView;
+		}
+	}
+}
@@ -8,11 +8,17 @@
 
 package org.cloudbus.cloudsim.sdn.physicalcomponents;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Hashtable;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
+import org.cloudbus.cloudsim.sdn.LongHashMap;
 import org.cloudbus.cloudsim.sdn.nos.NetworkOperatingSystem;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.AggregationSwitch;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.CoreSwitch;
@@ -21,11 +27,6 @@ import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.GatewaySwitch;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.IntercloudSwitch;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.Switch;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
-
 
 /**
  * Network connection maps including switches, hosts, and links between them in physical layer.
@@ -51,14 +52,28 @@ public abstract class PhysicalTopology {
 	protected final int RANK_HOST = 1000;
 	
 	protected Hashtable<Integer,Node> nodesTable;	// Address -> Node
-	protected Table<Integer, Integer, Link> linkTable; 	// From : To -> Link
-	protected Multimap<Node,Link> nodeLinks;	// Node -> all Links
+	protected LongHashMap<Link> linkTable; 	// getLinkKey(From, To) -> Link
+	protected List<Link> links;	// Links between nodes in the order added, without loopback links
+	
+	// Adjacency and typed views of the nodes and links, built once the topology is complete. Null if the topology changed since.
+	private TopologyGraph graph;
+	private SDNHost[] hostArray;
+	private Switch[] switchArray;
+	private Link[] linkArray;
+	private Map<NodeType, Node[]> tierArrays;
+	
+	// Equal-cost paths between hosts, following the routing tables
+	private PathCache pathCache = new PathCache();
 
 	public PhysicalTopology() {
 		nodesTable = new Hashtable<Integer,Node>();
-		nodeLinks = HashMultimap.create();
-		linkTable = HashBasedTable.create();
+		links = new ArrayList<Link>();
+		linkTable = new LongHashMap<Link>();
 	}	
+	
+	private static long getLinkKey(int from, int to) {
+		return ((long)from << 32) | (to & 0xffffffffL);
+	}
 
 	public abstract void buildDefaultRouting();
 	
@@ -67,6 +82,7 @@ public abstract class PhysicalTopology {
 	}
 	
 	public void addNode(Node node){
+		invalidateViews();
 		nodesTable.put(node.getAddress(), node);
 		if (node instanceof CoreSwitch){//coreSwitch is rank 0 (root)
 			node.setRank(RANK_CORE);
@@ -88,29 +104,19 @@ public abstract class PhysicalTopology {
 	}
 	
 	public Collection<Node> getNodesType(NodeType tier) {
-		Collection<Node> allNodes = getAllNodes();
-		Collection<Node> nodes = new LinkedList<Node>();
-		for(Node node:allNodes) {
-			 if(tier == NodeType.Host && node.getRank() == RANK_HOST) {
-					nodes.add(node);
-			}
-			else if(tier == NodeType.Intercloud && node.getRank() == RANK_INTERCLOUD) {
-				nodes.add(node);
-			}
-			else if(tier == NodeType.Gateway && node.getRank() == RANK_GATEWAY) {
-				nodes.add(node);
-			}
-			else if(tier == NodeType.Core && node.getRank() == RANK_CORE) {
-				nodes.add(node);
-			}
-			else if(tier == NodeType.Aggr && node.getRank() == RANK_AGGR) {
-				nodes.add(node);
-			}
-			else if(tier == NodeType.Edge && node.getRank() == RANK_EDGE) {
-				nodes.add(node);
-			}
+		return Collections.unmodifiableList(Arrays.asList(getNodeArray(tier)));
+	}
+	
+	private NodeType getNodeType(Node node) {
+		switch(node.getRank()) {
+		case RANK_INTERCLOUD:	return NodeType.Intercloud;
+		case RANK_GATEWAY:		return NodeType.Gateway;
+		case RANK_CORE:			return NodeType.Core;
+		case RANK_AGGR:			return NodeType.Aggr;
+		case RANK_EDGE:			return NodeType.Edge;
+		case RANK_HOST:			return NodeType.Host;
+		default:				return null;
 		}
-		return nodes;
 	}
 	
 	public Collection<Node> getConnectedNodesLow(Node node) {
@@ -163,7 +169,7 @@ public abstract class PhysicalTopology {
 			throw new IllegalArgumentException("Unknown node on link:"+nodesTable.get(from).getAddress()+"->"+nodesTable.get(to).getAddress());
 		}
 		
-		if (linkTable.contains(fromNode.getAddress(), toNode.getAddress())){
+		if (linkTable.containsKey(getLinkKey(from, to))){
 			throw new IllegalArgumentException("Link added twice:"+fromNode.getAddress()+"->"+toNode.getAddress());
 		}
 		
@@ -171,14 +177,20 @@ public abstract class PhysicalTopology {
 			throw new IllegalArgumentException("Unable to establish orders for nodes on link:"+nodesTable.get(from).getAddress()+"->"+nodesTable.get(to).getAddress());
 		}
 		
+		// The new link can add equal-cost paths through the two nodes.
+		// Paths are only cached once the graph is built; adding the links of a new topology does not rebuild it.
+		if(graph != null) {
+			invalidateAdjacentPaths(fromNode);
+			invalidateAdjacentPaths(toNode);
+		}
+		invalidateViews();
+		
 		Link l = new Link(fromNode, toNode, latency, bw);
 		
 		// Two way links (From -> to, To -> from)
-		linkTable.put(from, to, l);
-		linkTable.put(to, from, l);
-		
-		nodeLinks.put(fromNode, l);
-		nodeLinks.put(toNode, l);
+		linkTable.put(getLinkKey(from, to), l);
+		linkTable.put(getLinkKey(to, from), l);
+		links.add(l);
 		
 		fromNode.addLink(l);
 		toNode.addLink(l);
@@ -192,12 +204,27 @@ public abstract class PhysicalTopology {
 		Link l = new Link(node, node, latency, bw);
 		
 		// Two way links (From -> to, To -> from)
-		linkTable.put(nodeId, nodeId, l);
+		linkTable.put(getLinkKey(nodeId, nodeId), l);
 		node.addLink(l);
 	}
 	
+	private void invalidateAdjacentPaths(Node node) {
+		int idx = graph.getNodeIndex(node);
+		if(idx < 0)
+			return;
+		for(int e=graph.getFirstEdge(idx); e<graph.getEndEdge(idx); e++)
+			pathCache.invalidateLink(graph.getLink(graph.getEdgeLink(e)));
+	}
+	
+	/**
+	 * Links of the node without the loopback link, in the order added. The list is backed by the topology graph.
+	 */
 	public Collection<Link> getAdjacentLinks(Node node) {
-		return nodeLinks.get(node);
+		TopologyGraph g = getGraph();
+		int idx = g.getNodeIndex(node);
+		if(idx < 0)
+			return Collections.emptyList();
+		return g.getAdjacentLinks(idx);
 	}
 	
 	public Collection<Node> getAllNodes() {
@@ -205,27 +232,118 @@ public abstract class PhysicalTopology {
 	}
 	
 	public Collection<Switch> getAllSwitches() {
-		Collection<Switch> allSwitches = new LinkedList<>();
-		for(Node n:nodesTable.values()) {
-			if(n instanceof Switch)
-				allSwitches.add((Switch) n);
-		}
-		return allSwitches;
+		return Collections.unmodifiableList(Arrays.asList(getSwitchArray()));
 	}
 	
 	public Collection<SDNHost> getAllHosts() {
-		Collection<SDNHost> allHosts = new LinkedList<>();
+		return Collections.unmodifiableList(Arrays.asList(getHostArray()));
+	}
+	
+	public Collection<Link> getAllLinks() {
+		return Collections.unmodifiableList(Arrays.asList(getLinkArray()));
+	}
+	
+	/**
+	 * Builds the adjacency graph and the typed views of nodes and links. Called once the topology is complete (after {@link #buildDefaultRouting()}),
+	 * and again only if a node or a link is added afterwards. Cached paths are dropped, as the routes may be rebuilt.
+	 */
+	public void buildViews() {
+		List<SDNHost> hosts = new ArrayList<SDNHost>();
+		List<Switch> switches = new ArrayList<Switch>();
+		Map<NodeType, List<Node>> tiers = new EnumMap<NodeType, List<Node>>(NodeType.class);
+		for(NodeType tier:NodeType.values())
+			tiers.put(tier, new ArrayList<Node>());
+		
 		for(Node n:nodesTable.values()) {
 			if(n instanceof SDNHost)
-				allHosts.add((SDNHost) n);
+				hosts.add((SDNHost) n);
+			if(n instanceof Switch)
+				switches.add((Switch) n);
+			NodeType tier = getNodeType(n);
+			if(tier != null)
+				tiers.get(tier).add(n);
 		}
-		return allHosts;
+		
+		graph = new TopologyGraph(nodesTable.values(), links);
+		hostArray = hosts.toArray(new SDNHost[hosts.size()]);
+		switchArray = switches.toArray(new Switch[switches.size()]);
+		linkArray = links.toArray(new Link[links.size()]);
+		tierArrays = new EnumMap<NodeType, Node[]>(NodeType.class);
+		for(NodeType tier:NodeType.values())
+			tierArrays.put(tier, tiers.get(tier).toArray(new Node[0]));
+		
+		pathCache.clear();
 	}
 	
-	public Collection<Link> getAllLinks() {
-		HashSet<Link> allLinks = new HashSet<Link>();
-		allLinks.addAll(nodeLinks.values());
-		return allLinks;
+	protected void invalidateViews() {
+		graph = null;
+		hostArray = null;
+		switchArray = null;
+		linkArray = null;
+		tierArrays = null;
+	}
+	
+	private void ensureViews() {
+		if(graph == null)
+			buildViews();
+	}
+	
+	/**
+	 * Adjacency of the nodes and links in compressed sparse row form, for traversals over dense indices.
+	 */
+	public TopologyGraph getGraph() {
+		ensureViews();
+		return graph;
+	}
+	
+	/**
+	 * Hosts in the topology. The array is shared and should not be modified.
+	 */
+	public SDNHost[] getHostArray() {
+		ensureViews();
+		return hostArray;
+	}
+	
+	/**
+	 * Switches in the topology. The array is shared and should not be modified.
+	 */
+	public Switch[] getSwitchArray() {
+		ensureViews();
+		return switchArray;
+	}
+	
+	/**
+	 * Links between nodes, without loopback links. The array is shared and should not be modified.
+	 */
+	public Link[] getLinkArray() {
+		ensureViews();
+		return linkArray;
+	}
+	
+	/**
+	 * Nodes in the tier. The array is shared and should not be modified.
+	 */
+	public Node[] getNodeArray(NodeType tier) {
+		ensureViews();
+		return tierArrays.get(tier);
+	}
+	
+	/**
+	 * Enumerates the equal-cost paths between every pair of hosts. Called once the routes are built.
+	 */
+	public void buildPathCache() {
+		SDNHost[] hosts = getHostArray();
+		for(SDNHost src:hosts) {
+			for(SDNHost dst:hosts)
+				pathCache.getPaths(src, dst);
+		}
+	}
+	
+	/**
+	 * Equal-cost paths between hosts. Call {@link PathCache#invalidateLink(Link)} when a link or its routes change.
+	 */
+	public PathCache getPathCache() {
+		return pathCache;
 	}
 	
 	public void printTopology() {
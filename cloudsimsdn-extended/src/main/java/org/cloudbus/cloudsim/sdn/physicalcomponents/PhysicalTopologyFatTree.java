@@ -8,7 +8,14 @@
 
 package org.cloudbus.cloudsim.sdn.physicalcomponents;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.sdn.Configuration;
 
 
 /**
@@ -19,6 +26,9 @@ import java.util.Collection;
  * @since CloudSimSDN 1.0
  */
 public class PhysicalTopologyFatTree extends PhysicalTopology {
+	
+	// Rack/pod addresses of the hosts, if built with Configuration.HIERARCHICAL_ROUTING
+	protected HostAddressing addressing = null;
 
 	@Override
 	public void buildDefaultRouting() {
@@ -27,6 +37,11 @@ public class PhysicalTopologyFatTree extends PhysicalTopology {
 	}
 	
 	protected void buildDefaultRoutingFatTree() {
+		if(Configuration.HIERARCHICAL_ROUTING) {
+			buildHierarchicalRoutingFatTree();
+			return;
+		}
+		
 		Collection<Node> nodes = getAllNodes();
 		
 		/********************************************
@@ -102,4 +117,94 @@ public class PhysicalTopologyFatTree extends PhysicalTopology {
 			}
 		}
 	}
+	
+	/**
+	 * Builds the same routes as {@link #buildDefaultRoutingFatTree()} with range routes:
+	 * aggregation switches route by the rack of the destination host and core switches by its pod,
+	 * so the routing state is linear in the number of hosts.
+	 * All aggregation switches in a pod are expected to reach all of its edge switches, as in a fat-tree.
+	 */
+	protected void buildHierarchicalRoutingFatTree() {
+		addressing = new HostAddressing();
+		Map<Node, Integer> podOfSwitch = buildPods();
+		
+		// Host -> Edge : default route
+		// Edge -> Host : for specific destination host
+		// Edge -> Aggr : default route
+		// Aggr -> Edge : for the rack of the edge
+		for(Node edge:getNodeArray(NodeType.Edge)) {
+			int rack = addressing.addRack(podOfSwitch.get(edge));
+			
+			List<Node> hosts = new ArrayList<Node>();
+			for(Link l:getAdjacentLinks(edge)) {
+				Node host = l.getLowOrder();
+				if(l.getHighOrder().equals(edge) && host.getRank() == RANK_HOST) {
+					host.addRoute(null, l);
+					edge.addRoute(host, l);
+					if(!addressing.addHost(host, rack))
+						hosts.add(host);	// Also connected to another rack
+				}
+			}
+			
+			for(Link l:getAdjacentLinks(edge)) {
+				if(l.getLowOrder().equals(edge)) {
+					edge.addRoute(null, l);
+					Node agg = l.getHighOrder();
+					agg.getRoutingTable().addRangeRoute(addressing, HostAddressing.LEVEL_RACK, rack, l);
+					for(Node host:hosts)
+						agg.addRoute(host, l);
+				}
+			}
+		}
+		
+		// Aggr -> Core : default route
+		// Core -> Aggr : for the pod of the aggregation switch
+		for(Node agg:getNodeArray(NodeType.Aggr)) {
+			for(Link l:getAdjacentLinks(agg)) {
+				if(l.getLowOrder().equals(agg)) {
+					agg.addRoute(null, l);
+					Node core = l.getHighOrder();
+					if(core.getRank() == RANK_CORE)
+						core.getRoutingTable().addRangeRoute(addressing, HostAddressing.LEVEL_POD, podOfSwitch.get(agg), l);
+				}
+			}
+		}
+	}
+	
+	// Pods: groups of edge and aggregation switches connected to each other. Traverses the topology graph by node index.
+	private Map<Node, Integer> buildPods() {
+		TopologyGraph graph = getGraph();
+		int[] podOf = new int[graph.getNodeCount()];
+		Arrays.fill(podOf, -1);
+		int[] queue = new int[graph.getNodeCount()];
+		
+		Map<Node, Integer> podOfSwitch = new HashMap<Node, Integer>();
+		for(Node edge:getNodeArray(NodeType.Edge)) {
+			int start = graph.getNodeIndex(edge);
+			if(podOf[start] >= 0)
+				continue;
+			
+			int pod = addressing.addPod();
+			int head = 0, tail = 0;
+			podOf[start] = pod;
+			queue[tail++] = start;
+			while(head < tail) {
+				int cur = queue[head++];
+				podOfSwitch.put(graph.getNode(cur), pod);
+				for(int e=graph.getFirstEdge(cur); e<graph.getEndEdge(cur); e++) {
+					int other = graph.getEdgeNode(e);
+					int rank = graph.getNode(other).getRank();
+					if((rank == RANK_EDGE || rank == RANK_AGGR) && podOf[other] < 0) {
+						podOf[other] = pod;
+						queue[tail++] = other;
+					}
+				}
+			}
+		}
+		return podOfSwitch;
+	}
+	
+	public HostAddressing getHostAddressing() {
+		return addressing;
+	}
 }
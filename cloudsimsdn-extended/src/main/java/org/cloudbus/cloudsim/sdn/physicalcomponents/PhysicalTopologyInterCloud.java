@@ -45,7 +45,10 @@ public class PhysicalTopologyInterCloud extends PhysicalTopologyFatTree {
 						
 						// Add all children hosts to GW
 						Node gateway = l.getHighOrder();
-						addMultipleRoute(gateway, core.getRoutingTable().getKnownDestination(), l); // GW -> Core : for KNOWN HOSTS
+						if(addressing != null)
+							gateway.getRoutingTable().addRangeRoute(addressing, HostAddressing.LEVEL_ALL, 0, l); // GW -> Core : for all hosts
+						else
+							addMultipleRoute(gateway, core.getRoutingTable().getKnownDestination(), l); // GW -> Core : for KNOWN HOSTS
 					}
 				}
 			}
@@ -9,6 +9,8 @@ package org.cloudbus.cloudsim.sdn.physicalcomponents;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +28,10 @@ import java.util.Set;
 public class RoutingTable {
 	
 	Map<Node, List<Link>> table;
+	
+	// Range routes to a rack, a pod or all hosts of an addressing (hierarchical routing). Null if none.
+	private Map<Long, RangeRoute> rangeTable = null;	// HostAddressing.getKey(level, group) -> RangeRoute
+	private List<HostAddressing> addressings = null;
 
 	public RoutingTable(){
 		this.table = new HashMap<Node, List<Link>>();
@@ -33,6 +39,8 @@ public class RoutingTable {
 	
 	public void clear(){
 		table.clear();
+		rangeTable = null;
+		addressings = null;
 	}
 	
 	public void addRoute(Node destHost, Link to){
@@ -46,30 +54,100 @@ public class RoutingTable {
 		table.put(destHost, links);
 	}
 	
+	/**
+	 * Adds a route to all hosts in a range of the addressing. Exact routes to a host take precedence,
+	 * then the routes to its rack, its pod and all hosts, then the default route.
+	 */
+	public void addRangeRoute(HostAddressing addressing, int level, int group, Link to){
+		if(rangeTable == null) {
+			rangeTable = new LinkedHashMap<Long, RangeRoute>();
+			addressings = new ArrayList<HostAddressing>();
+		}
+		if(!addressings.contains(addressing))
+			addressings.add(addressing);
+		
+		long key = addressing.getKey(level, group);
+		RangeRoute route = rangeTable.get(key);
+		if(route == null) {
+			route = new RangeRoute(addressing, level, group);
+			rangeTable.put(key, route);
+		}
+		route.links.add(to);
+	}
+	
+	private List<Link> getRangeRoute(Node destHost) {
+		for(HostAddressing addressing:addressings) {
+			int rack = addressing.getRack(destHost);
+			if(rack < 0)
+				continue;
+			
+			RangeRoute route = rangeTable.get(addressing.getKey(HostAddressing.LEVEL_RACK, rack));
+			if(route == null)
+				route = rangeTable.get(addressing.getKey(HostAddressing.LEVEL_POD, addressing.getPodOfRack(rack)));
+			if(route == null)
+				route = rangeTable.get(addressing.getKey(HostAddressing.LEVEL_ALL, 0));
+			if(route != null)
+				return route.links;
+		}
+		return null;
+	}
+	
 	public void removeRoute(Node destHost){
 		table.remove(destHost);
 	}
 
 	public List<Link> getRoute(Node destHost) {
 		List<Link> links = table.get(destHost);
+		if(links == null && rangeTable != null && destHost != null)
+			links = getRangeRoute(destHost);
 		if(links == null)
 			links = table.get(null); // default route
 		return links;
 	}
 	
 	public Set<Node> getKnownDestination() {
-		return table.keySet();
+		if(rangeTable == null)
+			return table.keySet();
+		
+		// Hosts covered by the range routes as well
+		Set<Node> destinations = new LinkedHashSet<Node>(table.keySet());
+		for(RangeRoute route:rangeTable.values())
+			destinations.addAll(route.addressing.getHosts(route.level, route.group));
+		return destinations;
 	}
 	
 	public void printRoutingTable() {
+		StringBuilder sb = new StringBuilder();
 		for(Node key:table.keySet()) {
 			for(Link l: table.get(key)) {
-				System.out.println("dst:"+key+" : "+l);
+				sb.append("dst:").append(key).append(" : ").append(l).append('\n');
+			}
+		}
+		if(rangeTable != null) {
+			for(RangeRoute route:rangeTable.values()) {
+				for(Link l: route.links) {
+					sb.append("dst:").append(HostAddressing.getLevelName(route.level)).append(' ').append(route.group)
+						.append(" : ").append(l).append('\n');
+				}
 			}
 		}
+		System.out.print(sb);
 	}
 	
 	public String toString() {
 		return table.toString();
 	}
+	
+	private static class RangeRoute {
+		final HostAddressing addressing;
+		final int level;
+		final int group;
+		final List<Link> links = new ArrayList<Link>();
+		
+		RangeRoute(HostAddressing addressing, int level, int group) {
+			this.addressing = addressing;
+			this.level = level;
+			this.group = group;
+		}
+	}
 }
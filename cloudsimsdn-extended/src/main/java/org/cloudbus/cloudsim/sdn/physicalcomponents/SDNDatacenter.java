@@ -7,9 +7,14 @@
  */
 package org.cloudbus.cloudsim.sdn.physicalcomponents;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 import org.cloudbus.cloudsim.Cloudlet;
 import org.cloudbus.cloudsim.CloudletScheduler;
@@ -23,11 +28,16 @@ import org.cloudbus.cloudsim.VmAllocationPolicy;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
 import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.sdn.AnalyticComputeQueue;
 import org.cloudbus.cloudsim.sdn.CloudSimTagsSDN;
+import org.cloudbus.cloudsim.sdn.CloudletCompletionQueue;
 import org.cloudbus.cloudsim.sdn.CloudletSchedulerMonitor;
+import org.cloudbus.cloudsim.sdn.Configuration;
 import org.cloudbus.cloudsim.sdn.Packet;
+import org.cloudbus.cloudsim.sdn.TimeoutWheel;
 import org.cloudbus.cloudsim.sdn.nos.NetworkOperatingSystem;
 import org.cloudbus.cloudsim.sdn.policies.vmallocation.VmAllocationInGroup;
+import org.cloudbus.cloudsim.sdn.policies.vmallocation.VmAllocationPolicyEx;
 import org.cloudbus.cloudsim.sdn.policies.vmallocation.VmAllocationPolicyPriorityFirst;
 import org.cloudbus.cloudsim.sdn.policies.vmallocation.VmGroup;
 import org.cloudbus.cloudsim.sdn.virtualcomponents.SDNVm;
@@ -49,6 +59,39 @@ public class SDNDatacenter extends Datacenter {
   protected String placementsFile;
   private NetworkOperatingSystem nos;
   protected HashMap<Integer, Request> requestsTable = new HashMap<Integer, Request>();
+  // Deadlines of submitted cloudlets whose scheduler has a timeout
+  protected TimeoutWheel<Cloudlet> cloudletTimeouts = new TimeoutWheel<Cloudlet>(
+      TimeoutWheel.getTickSize(Configuration.TIME_OUT));
+  // Schedulers with finished or failed cloudlets, added by the schedulers themselves
+  protected CloudletCompletionQueue completionQueue = new CloudletCompletionQueue();
+
+  // Next completion times of the hosts (Configuration.LAZY_HOST_PROCESSING). Entries older than the host's
+  // current next completion time are skipped.
+  private PriorityQueue<HostCompletion> hostCompletions = new PriorityQueue<HostCompletion>();
+  private double nextProcessingEventTime = -1;
+
+  // Fluid queues of processing activities by VM ID (Configuration.ANALYTIC_COMPUTE)
+  private HashMap<Integer, AnalyticComputeQueue> analyticQueues = new HashMap<Integer, AnalyticComputeQueue>();
+
+  private static class HostCompletion implements Comparable<HostCompletion> {
+    final SDNHost host;
+    final double time;
+
+    HostCompletion(SDNHost host, double time) {
+      this.host = host;
+      this.time = time;
+    }
+
+    boolean isCurrent() {
+      return time == host.getNextCompletionTime();
+    }
+
+    @Override
+    public int compareTo(HostCompletion o) {
+      return Double.compare(time, o.time);
+    }
+  }
+
   protected static HashMap<Integer, Datacenter> globalVmDatacenterMap = new HashMap<Integer, Datacenter>();
 
   private static boolean isMigrateEnabled = false;
@@ -92,6 +135,7 @@ public class SDNDatacenter extends Datacenter {
   }
 
   protected boolean processVmCreateEvent(SDNVm vm, boolean ack) {
+    advanceAllHostsProcessing();
     boolean result = getVmAllocationPolicy().allocateHostForVm(vm);
 
     if (ack) {
@@ -108,19 +152,50 @@ public class SDNDatacenter extends Datacenter {
     }
 
     if (result) {
-      globalVmDatacenterMap.put(vm.getId(), this);
+      processVmCreated(vm);
+      afterHostChange(vm.getHost());
+    }
 
-      getVmList().add(vm);
+    return result;
+  }
 
-      if (vm.isBeingInstantiated()) {
-        vm.setBeingInstantiated(false);
+  // Registers a VM placed on a host
+  private void processVmCreated(SDNVm vm) {
+    globalVmDatacenterMap.put(vm.getId(), this);
+
+    getVmList().add(vm);
+
+    if (vm.isBeingInstantiated()) {
+      vm.setBeingInstantiated(false);
+    }
+
+    vm.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(vm).getVmScheduler()
+        .getAllocatedMipsForVm(vm));
+  }
+
+  // Creates all VMs in the list with one batch allocation, and acknowledges the NOS once.
+  protected void processVmCreateBulk(SimEvent ev) {
+    @SuppressWarnings("unchecked")
+    List<SDNVm> vms = (List<SDNVm>) ev.getData();
+
+    advanceAllHostsProcessing();
+    List<SDNVm> created;
+    if (getVmAllocationPolicy() instanceof VmAllocationPolicyEx) {
+      created = ((VmAllocationPolicyEx) getVmAllocationPolicy()).allocateHostsForVms(vms);
+    } else {
+      created = new ArrayList<SDNVm>();
+      for (SDNVm vm : vms) {
+        if (getVmAllocationPolicy().allocateHostForVm(vm))
+          created.add(vm);
       }
+    }
 
-      vm.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(vm).getVmScheduler()
-          .getAllocatedMipsForVm(vm));
+    for (SDNVm vm : created) {
+      processVmCreated(vm);
+      afterHostChange(vm.getHost());
     }
 
-    return result;
+    send(nos.getId(), 0, CloudSimTagsSDN.SDN_VM_CREATE_BULK_ACK, vms);
   }
 
   protected boolean processVmCreateDynamic(SimEvent ev) {
@@ -144,6 +219,7 @@ public class SDNDatacenter extends Datacenter {
     Vm vm = (Vm) params.get(0);
     VmGroup vmGroup = (VmGroup) params.get(1);
 
+    advanceAllHostsProcessing();
     boolean result = ((VmAllocationInGroup) getVmAllocationPolicy()).allocateHostForVmInGroup(vm, vmGroup);
 
     if (ack) {
@@ -169,9 +245,18 @@ public class SDNDatacenter extends Datacenter {
 
       vm.updateVmProcessing(CloudSim.clock(), getVmAllocationPolicy().getHost(vm).getVmScheduler()
           .getAllocatedMipsForVm(vm));
+      afterHostChange(vm.getHost());
     }
   }
 
+  @Override
+  protected void processVmDestroy(SimEvent ev, boolean ack) {
+    Host host = ((Vm) ev.getData()).getHost();
+    beforeHostChange(host);
+    super.processVmDestroy(ev, ack);
+    afterHostChange(host);
+  }
+
   @Override
   protected void processVmMigrate(SimEvent ev, boolean ack) {
     migrationCompleted++;
@@ -184,9 +269,15 @@ public class SDNDatacenter extends Datacenter {
     Host newHost = (Host) migrate.get("host");
     Host oldHost = vm.getHost();
 
+    beforeHostChange(oldHost);
+    beforeHostChange(newHost);
+
     // Migrate the VM to another host.
     super.processVmMigrate(ev, ack);
 
+    afterHostChange(oldHost);
+    afterHostChange(newHost);
+
     nos.processVmMigrate(vm, (SDNHost) oldHost, (SDNHost) newHost);
   }
 
@@ -199,6 +290,12 @@ public class SDNDatacenter extends Datacenter {
       case CloudSimTagsSDN.SDN_PACKET_COMPLETE:
         processPacketCompleted((Packet) ev.getData());
         break;
+      case CloudSimTagsSDN.SDN_PACKET_COMPLETE_BATCH:
+        processPacketsCompleted((Packet[]) ev.getData());
+        break;
+      case CloudSimTagsSDN.SDN_ANALYTIC_PROCESSING_COMPLETE:
+        processAnalyticQueue((AnalyticComputeQueue) ev.getData());
+        break;
       case CloudSimTagsSDN.SDN_PACKET_FAILED:
         processPacketFailed((Packet) ev.getData());
         break;
@@ -211,14 +308,125 @@ public class SDNDatacenter extends Datacenter {
       case CloudSimTagsSDN.SDN_VM_CREATE_DYNAMIC:
         processVmCreateDynamic(ev);
         break;
+      case CloudSimTagsSDN.SDN_VM_CREATE_BULK:
+        processVmCreateBulk(ev);
+        break;
       default:
         System.out.println("Unknown event recevied by SdnDatacenter. Tag:" + ev.getTag());
     }
   }
 
   public void processUpdateProcessing() {
-    updateCloudletProcessing(); // Force Processing - TRUE!
+    updateAllHostsProcessing(); // Force Processing - TRUE!
     checkCloudletCompletion();
+    if (Configuration.ANALYTIC_COMPUTE) {
+      // Pick up the share changes of the VMs
+      for (AnalyticComputeQueue queue : analyticQueues.values()) {
+        if (!queue.isEmpty())
+          processAnalyticQueue(queue);
+      }
+    }
+  }
+
+  @Override
+  protected void updateCloudletProcessing() {
+    if (Configuration.LAZY_HOST_PROCESSING) {
+      updateDueHostsProcessing();
+    } else {
+      super.updateCloudletProcessing();
+    }
+  }
+
+  /**
+   * Brings every host up to date, e.g. before their state is read for monitoring or migration.
+   */
+  protected void updateAllHostsProcessing() {
+    if (!Configuration.LAZY_HOST_PROCESSING) {
+      updateCloudletProcessing();
+      return;
+    }
+
+    for (Host host : getVmAllocationPolicy().getHostList()) {
+      updateHostProcessing((SDNHost) host);
+    }
+    scheduleNextHostProcessing();
+  }
+
+  // Advances the hosts whose next completion is due
+  private void updateDueHostsProcessing() {
+    double dueTime = CloudSim.clock() + CloudSim.getMinTimeBetweenEvents();
+    Set<SDNHost> dueHosts = new LinkedHashSet<SDNHost>();
+    while (!hostCompletions.isEmpty() && hostCompletions.peek().time <= dueTime) {
+      HostCompletion c = hostCompletions.poll();
+      if (c.isCurrent()) {
+        dueHosts.add(c.host);
+      }
+    }
+
+    for (SDNHost host : dueHosts) {
+      updateHostProcessing(host);
+    }
+    scheduleNextHostProcessing();
+  }
+
+  /**
+   * Brings the host up to date before VMs are placed on or removed from it, as that changes the MIPS shares
+   * (Configuration.LAZY_HOST_PROCESSING). Call {@link #afterHostChange(Host)} after the change.
+   */
+  protected void beforeHostChange(Host host) {
+    if (Configuration.LAZY_HOST_PROCESSING && host != null) {
+      advanceHostProcessing((SDNHost) host);
+    }
+  }
+
+  /**
+   * Finds the next completion of the host again after VMs are placed on or removed from it.
+   */
+  protected void afterHostChange(Host host) {
+    if (Configuration.LAZY_HOST_PROCESSING && host != null) {
+      updateHostProcessing((SDNHost) host);
+      scheduleNextHostProcessing();
+    }
+  }
+
+  // Advances all hosts before VMs are placed, as a placement changes the MIPS shares of the chosen host
+  private void advanceAllHostsProcessing() {
+    if (!Configuration.LAZY_HOST_PROCESSING)
+      return;
+    for (Host host : getVmAllocationPolicy().getHostList()) {
+      advanceHostProcessing((SDNHost) host);
+    }
+  }
+
+  // Advances the host to the current time if it is behind, without rescheduling it
+  private void advanceHostProcessing(SDNHost host) {
+    if (host.getLastProcessingTime() < CloudSim.clock()) {
+      host.updateVmsProcessing(CloudSim.clock());
+    }
+  }
+
+  private void updateHostProcessing(SDNHost host) {
+    double time = host.updateVmsProcessing(CloudSim.clock());
+    if (time < Double.MAX_VALUE) {
+      hostCompletions.add(new HostCompletion(host, time));
+    }
+  }
+
+  // Sends one VM_DATACENTER_EVENT for the earliest host completion, unless a pending event comes first
+  private void scheduleNextHostProcessing() {
+    while (!hostCompletions.isEmpty() && !hostCompletions.peek().isCurrent()) {
+      hostCompletions.poll();
+    }
+    if (hostCompletions.isEmpty())
+      return;
+
+    double nextTime = hostCompletions.peek().time;
+    if (nextProcessingEventTime > CloudSim.clock() && nextProcessingEventTime <= nextTime)
+      return;
+
+    double delay = Math.max(nextTime - CloudSim.clock(), CloudSim.getMinTimeBetweenEvents());
+    send(getId(), delay, CloudSimTags.VM_DATACENTER_EVENT);
+    nextProcessingEventTime = CloudSim.clock() + delay;
   }
 
   protected void processCloudletSubmit(SimEvent ev, boolean ack) {
@@ -226,8 +434,10 @@ public class SDNDatacenter extends Datacenter {
     Cloudlet cl = (Cloudlet) ev.getData();
 
     // Clear out the processed data for the previous time slot before Cloudlet
-    // submitted
-    updateCloudletProcessing();
+    // submitted. In lazy mode, only the host of the VM is updated below.
+    if (!Configuration.LAZY_HOST_PROCESSING) {
+      updateCloudletProcessing();
+    }
 
     try {
       // checks whether this Cloudlet has finished or not
@@ -272,15 +482,28 @@ public class SDNDatacenter extends Datacenter {
       Vm vm = host.getVm(vmId, userId);
       CloudletScheduler scheduler = vm.getCloudletScheduler();
 
+      if (Configuration.LAZY_HOST_PROCESSING) {
+        advanceHostProcessing(host);
+      }
       double estimatedFinishTime = scheduler.cloudletSubmit(cl, fileTransferTime); // This estimated time is useless
 
+      registerCompletionQueue(vm);
+      registerCloudletTimeout(vm, cl);
+
       // host.adjustMipsShare();
       // estimatedFinishTime = scheduler.getNextFinishTime(CloudSim.clock(),
       // scheduler.getCurrentMipsShare());
 
       // Check the new estimated time by using host's update VM processing funciton.
       // This function is called only to check the next finish time
-      estimatedFinishTime = host.updateVmsProcessing(CloudSim.clock());
+      if (Configuration.LAZY_HOST_PROCESSING) {
+        // One event for the earliest completion among the hosts
+        updateHostProcessing(host);
+        scheduleNextHostProcessing();
+        estimatedFinishTime = Double.MAX_VALUE;
+      } else {
+        estimatedFinishTime = host.updateVmsProcessing(CloudSim.clock());
+      }
 
       double estimatedFinishDelay = estimatedFinishTime - CloudSim.clock();
       // estimatedFinishTime -= CloudSim.clock();
@@ -327,38 +550,137 @@ public class SDNDatacenter extends Datacenter {
       return;
     }
 
-    List<? extends Host> list = getVmAllocationPolicy().getHostList();
-    for (int i = 0; i < list.size(); i++) {
-      Host host = list.get(i);
-      for (Vm vm : host.getVmList()) {
-
-        // Check all completed Cloudlets
-        while (vm.getCloudletScheduler().isFinishedCloudlets()) {
-          Cloudlet cl = vm.getCloudletScheduler().getNextFinishedCloudlet();
-          if (cl != null) {
-            // For completed cloudlet -> process next activity.
-            Request req = requestsTable.remove(cl.getCloudletId());
-            req.getPrevActivity().setFinishTime(CloudSim.clock());
-
-            if (req.isFinished()) {
-              // All requests are finished, no more activities to do. Return to user
-              send(req.getUserId(), CloudSim.getMinTimeBetweenEvents(), CloudSimTagsSDN.REQUEST_COMPLETED, req);
-            } else {
-              // consume the next activity from request. It should be a transmission.
-              processNextActivity(req);
+    processCompletionQueue();
+    processCloudletTimeouts();
+    processCompletionQueue();
+  }
+
+  /**
+   * Submits the cloudlet to the VM's scheduler directly, without a CLOUDLET_SUBMIT event (e.g. to a backup VM).
+   */
+  protected void submitCloudletToVm(Vm vm, Cloudlet cl) {
+    registerCompletionQueue(vm);
+    getUpdatedCloudletScheduler(vm).cloudletSubmit(cl);
+    registerCloudletTimeout(vm, cl);
+    afterHostChange(vm.getHost());
+  }
+
+  // Sets the deadline of the cloudlet just submitted to the VM, if its scheduler has a time out
+  private void registerCloudletTimeout(Vm vm, Cloudlet cl) {
+    if (vm.getCloudletScheduler() instanceof CloudletSchedulerMonitor) {
+      double timeout = ((CloudletSchedulerMonitor) vm.getCloudletScheduler()).getTimeOut();
+      if (timeout > 0 && Double.isFinite(timeout)) {
+        cloudletTimeouts.add(CloudSim.clock() + timeout, cl);
+      }
+    }
+  }
+
+  /**
+   * Cancels the cloudlet in the VM's scheduler directly, after bringing the VM's host up to date.
+   */
+  protected Cloudlet cancelCloudletInVm(Vm vm, int cloudletId) {
+    Cloudlet cl = getUpdatedCloudletScheduler(vm).cloudletCancel(cloudletId);
+    afterHostChange(vm.getHost());
+    return cl;
+  }
+
+  /**
+   * Returns the VM's cloudlet scheduler after bringing the VM's host up to date, so that the progress read
+   * from it is current (Configuration.LAZY_HOST_PROCESSING).
+   */
+  protected CloudletScheduler getUpdatedCloudletScheduler(Vm vm) {
+    SDNHost host = (SDNHost) vm.getHost();
+    if (Configuration.LAZY_HOST_PROCESSING && host != null) {
+      advanceHostProcessing(host);
+    }
+    return vm.getCloudletScheduler();
+  }
+
+  /**
+   * Lets the VM's scheduler add itself to the completion queue. Needed before submitting a cloudlet
+   * to the scheduler directly, otherwise its completion is not collected.
+   */
+  protected void registerCompletionQueue(Vm vm) {
+    if (vm.getCloudletScheduler() instanceof CloudletSchedulerMonitor) {
+      ((CloudletSchedulerMonitor) vm.getCloudletScheduler()).setCompletionQueue(completionQueue);
+    }
+  }
+
+  /**
+   * Collects the finished and failed cloudlets from the schedulers in the completion queue only.
+   */
+  protected void processCompletionQueue() {
+    CloudletScheduler scheduler;
+    while ((scheduler = completionQueue.poll()) != null) {
+      // Check all completed Cloudlets
+      while (scheduler.isFinishedCloudlets()) {
+        Cloudlet cl = scheduler.getNextFinishedCloudlet();
+        if (cl != null) {
+          // For completed cloudlet -> process next activity.
+          Request req = requestsTable.remove(cl.getCloudletId());
+          if (req == null) {
+            // The request is dropped only when its VM was destroyed
+            if (getVmAllocationPolicy().getHost(cl.getVmId(), cl.getUserId()) != null) {
+              Log.printLine(CloudSim.clock() + ": " + getName()
+                  + ".processCompletionQueue(): No request for the finished cloudlet: " + cl.getCloudletId());
             }
+            continue;
           }
+          processProcessingCompleted(req);
         }
+      }
 
-        // Check all failed Cloudlets (time out)
-        List<Cloudlet> failedCloudlet = ((CloudletSchedulerMonitor) (vm.getCloudletScheduler())).getFailedCloudlet();
-        for (Cloudlet cl : failedCloudlet) {
+      if (scheduler instanceof CloudletSchedulerMonitor) {
+        for (Cloudlet cl : ((CloudletSchedulerMonitor) scheduler).getFailedCloudlet()) {
           processCloudletFailed(cl);
         }
       }
     }
   }
 
+  private void processProcessingCompleted(Request req) {
+    req.getPrevActivity().setFinishTime(CloudSim.clock());
+
+    if (req.isFinished()) {
+      // All requests are finished, no more activities to do. Return to user
+      send(req.getUserId(), CloudSim.getMinTimeBetweenEvents(), CloudSimTagsSDN.REQUEST_COMPLETED, req);
+    } else {
+      // consume the next activity from request. It should be a transmission.
+      processNextActivity(req);
+    }
+  }
+
+  /**
+   * Fails the cloudlets whose deadline is passed. Only the VMs having expired cloudlets are visited.
+   */
+  protected void processCloudletTimeouts() {
+    List<Cloudlet> expired = cloudletTimeouts.expire(CloudSim.clock());
+    if (expired.isEmpty())
+      return;
+
+    Map<Vm, List<Cloudlet>> expiredByVm = new LinkedHashMap<Vm, List<Cloudlet>>();
+    for (Cloudlet cl : expired) {
+      if (cl.isFinished())
+        continue;
+      Host host = getVmAllocationPolicy().getHost(cl.getVmId(), cl.getUserId());
+      Vm vm = (host != null) ? host.getVm(cl.getVmId(), cl.getUserId()) : null;
+      if (vm == null)
+        continue;
+      List<Cloudlet> list = expiredByVm.get(vm);
+      if (list == null) {
+        list = new ArrayList<Cloudlet>();
+        expiredByVm.put(vm, list);
+      }
+      list.add(cl);
+    }
+
+    for (Map.Entry<Vm, List<Cloudlet>> e : expiredByVm.entrySet()) {
+      // The scheduler adds itself to the completion queue with the failed cloudlets
+      CloudletSchedulerMonitor scheduler = (CloudletSchedulerMonitor) e.getKey().getCloudletScheduler();
+      scheduler.timeOutCloudlets(e.getValue());
+    }
+  }
+
   private void processRequestSubmit(Request req) {
     Activity ac = req.getNextActivity();
 
@@ -394,6 +716,13 @@ public class SDNDatacenter extends Datacenter {
     send(req.getUserId(), CloudSim.getMinTimeBetweenEvents(), CloudSimTagsSDN.REQUEST_FAILED, lastReq);
   }
 
+  // Packets delivered at the same time, in the order they completed
+  protected void processPacketsCompleted(Packet[] pkts) {
+    for (Packet pkt : pkts) {
+      processPacketCompleted(pkt);
+    }
+  }
+
   protected void processPacketCompleted(Packet pkt) {
     pkt.setPacketFinishTime(CloudSim.clock());
     Request req = pkt.getPayload();
@@ -425,6 +754,11 @@ public class SDNDatacenter extends Datacenter {
   }
 
   protected void processNextActivityProcessing(Processing proc, Request reqAfterCloudlet) {
+    if (Configuration.ANALYTIC_COMPUTE) {
+      processNextActivityProcessingAnalytic(proc, reqAfterCloudlet);
+      return;
+    }
+
     Cloudlet cl = proc.getCloudlet();
     proc.clearCloudlet();
 
@@ -451,6 +785,73 @@ public class SDNDatacenter extends Datacenter {
     proc.setVmMipsPerPE(mips);
   }
 
+  /**
+   * Adds the processing to the fluid queue of its VM instead of submitting a Cloudlet.
+   * Only the next completion of the VM is scheduled.
+   */
+  private void processNextActivityProcessingAnalytic(Processing proc, Request reqAfterCloudlet) {
+    int userId = proc.getUserId();
+    int vmId = proc.getVmId();
+
+    Host host = getVmAllocationPolicy().getHost(vmId, userId);
+    if (host == null) {
+      Vm orgVm = nos.getSFForwarderOriginalVm(vmId);
+      if (orgVm != null) {
+        vmId = orgVm.getId();
+        host = getVmAllocationPolicy().getHost(vmId, userId);
+      } else {
+        throw new NullPointerException("Error! cannot find a host for Workload:" + proc + ". VM=" + vmId);
+      }
+    }
+    Vm vm = host.getVm(vmId, userId);
+    proc.setVmMipsPerPE(vm.getMips());
+    long length = proc.getTotalLength();
+    proc.clearCloudlet();
+
+    AnalyticComputeQueue queue = analyticQueues.get(vmId);
+    if (queue == null || queue.getVm() != vm) {
+      queue = new AnalyticComputeQueue(vm, CloudSim.clock());
+      analyticQueues.put(vmId, queue);
+    }
+    queue.add(proc, reqAfterCloudlet, length, CloudSim.clock());
+    scheduleAnalyticQueue(queue);
+  }
+
+  private void processAnalyticQueue(AnalyticComputeQueue queue) {
+    for (AnalyticComputeQueue.Job job : queue.update(CloudSim.clock())) {
+      processProcessingCompleted(job.getRequest());
+    }
+    scheduleAnalyticQueue(queue);
+  }
+
+  /**
+   * Re-reads the MIPS share of the analytic queues of the VMs in the host after the host adjusted the shares,
+   * so that a queue left unscheduled without a share is scheduled again.
+   */
+  public void updateAnalyticQueues(SDNHost host) {
+    for (Vm vm : host.getVmList()) {
+      AnalyticComputeQueue queue = analyticQueues.get(vm.getId());
+      if (queue != null && queue.getVm() == vm && !queue.isEmpty()) {
+        queue.updateRate(CloudSim.clock());
+        scheduleAnalyticQueue(queue);
+      }
+    }
+  }
+
+  private void scheduleAnalyticQueue(AnalyticComputeQueue queue) {
+    double nextTime = queue.getNextFinishTime(CloudSim.clock());
+    if (nextTime == Double.MAX_VALUE)
+      return;
+
+    // An earlier event is already pending. It reschedules the queue when processed.
+    double scheduledTime = queue.getScheduledTime();
+    if (scheduledTime > CloudSim.clock() && scheduledTime <= nextTime)
+      return;
+
+    send(getId(), nextTime - CloudSim.clock(), CloudSimTagsSDN.SDN_ANALYTIC_PROCESSING_COMPLETE, queue);
+    queue.setScheduledTime(nextTime);
+  }
+
   public void printDebug() {
     System.err.println(CloudSim.clock() + ": # of currently processing Cloudlets: " + this.requestsTable.size());
   }
@@ -467,7 +868,7 @@ public class SDNDatacenter extends Datacenter {
 
         // Process cloudlets before migration because cloudlets are processed during
         // migration process..
-        updateCloudletProcessing();
+        updateAllHostsProcessing();
         checkCloudletCompletion();
 
         for (Map<String, Object> migrate : migrationMap) {
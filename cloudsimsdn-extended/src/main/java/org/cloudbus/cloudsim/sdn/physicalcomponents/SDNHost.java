@@ -8,7 +8,10 @@
 
 package org.cloudbus.cloudsim.sdn.physicalcomponents;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import org.cloudbus.cloudsim.Consts;
@@ -20,7 +23,9 @@ import org.cloudbus.cloudsim.VmScheduler;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.provisioners.BwProvisioner;
 import org.cloudbus.cloudsim.provisioners.RamProvisioner;
+import org.cloudbus.cloudsim.sdn.Configuration;
 import org.cloudbus.cloudsim.sdn.LogWriter;
+import org.cloudbus.cloudsim.sdn.LongIntHashMap;
 import org.cloudbus.cloudsim.sdn.VmSchedulerTimeSharedOverSubscriptionDynamicVM;
 import org.cloudbus.cloudsim.sdn.monitor.MonitoringValues;
 import org.cloudbus.cloudsim.sdn.monitor.power.PowerUtilizationEnergyModelHostLinear;
@@ -48,7 +53,16 @@ public class SDNHost extends Host implements Node {
   private double mttr = 0;
   private double checkpointInterval = 0;
 
-  private HashMap<Node, Link> linkToNextHop = new HashMap<Node, Link>();
+  private ArrayList<Link> links = new ArrayList<Link>(2); // Loopback and the links to the edge switches
+  private LongIntHashMap linkIndex = new LongIntHashMap(); // Address of the other node -> position in links
+
+  // Time the VMs were last advanced to, and the next cloudlet completion found then
+  private double lastProcessingTime = -1;
+  private double nextCompletionTime = Double.MAX_VALUE;
+
+  // Idle state of each VM at the last update, to pass only the changed VMs to the VM scheduler
+  // (Configuration.INCREMENTAL_MIPS_REDISTRIBUTION)
+  private IdentityHashMap<Vm, Boolean> vmIdleStates = new IdentityHashMap<Vm, Boolean>();
 
   public SDNHost(
       double mtbf,
@@ -81,6 +95,11 @@ public class SDNHost extends Host implements Node {
    */
   public double updateVmsProcessing(double currentTime) {
     double smallerTime = Double.MAX_VALUE;
+    List<Vm> changedVms = null;
+    if (Configuration.INCREMENTAL_MIPS_REDISTRIBUTION
+        && getVmScheduler() instanceof VmSchedulerTimeSharedOverSubscriptionDynamicVM) {
+      changedVms = new ArrayList<Vm>();
+    }
 
     // Update VM's processing for the previous time.
     for (SDNVm vm : this.<SDNVm>getVmList()) {
@@ -89,10 +108,20 @@ public class SDNHost extends Host implements Node {
       // System.err.println(CloudSim.clock()+":"+vm + " is allocated: "+
       // mipsAllocated);
       vm.updateVmProcessing(currentTime, mipsAllocated);
+
+      if (changedVms != null) {
+        boolean idle = vm.isIdle();
+        Boolean wasIdle = vmIdleStates.put(vm, idle);
+        if (wasIdle == null || wasIdle != idle)
+          changedVms.add(vm);
+      }
+    }
+    if (changedVms != null && vmIdleStates.size() > getVmList().size()) {
+      vmIdleStates.keySet().retainAll(new HashSet<Vm>(getVmList()));
     }
 
     // Change MIPS share proportion depending on the remaining Cloudlets.
-    adjustMipsShare();
+    adjustMipsShare(changedVms);
 
     // Check the next event time based on the updated MIPS share proportion
     for (SDNVm vm : this.<SDNVm>getVmList()) {
@@ -107,13 +136,41 @@ public class SDNHost extends Host implements Node {
       }
     }
 
+    lastProcessingTime = currentTime;
+
+    // The analytic queues of the VMs read the adjusted MIPS share
+    if (Configuration.ANALYTIC_COMPUTE && getDatacenter() instanceof SDNDatacenter) {
+      ((SDNDatacenter) getDatacenter()).updateAnalyticQueues(this);
+    }
+    nextCompletionTime = smallerTime;
     return smallerTime;
   }
 
+  /**
+   * @return time of the last {@link #updateVmsProcessing(double)}, -1 if never updated
+   */
+  public double getLastProcessingTime() {
+    return lastProcessingTime;
+  }
+
+  /**
+   * @return next completion time returned by the last {@link #updateVmsProcessing(double)}
+   */
+  public double getNextCompletionTime() {
+    return nextCompletionTime;
+  }
+
   public void adjustMipsShare() {
+    adjustMipsShare(null);
+  }
+
+  /**
+   * @param changedVms VMs whose idle state changed since the last call, or null for all VMs
+   */
+  public void adjustMipsShare(Collection<? extends Vm> changedVms) {
     if (getVmScheduler() instanceof VmSchedulerTimeSharedOverSubscriptionDynamicVM) {
       VmSchedulerTimeSharedOverSubscriptionDynamicVM sch = (VmSchedulerTimeSharedOverSubscriptionDynamicVM) getVmScheduler();
-      double scaleFactor = sch.redistributeMipsDueToOverSubscriptionDynamic();
+      double scaleFactor = sch.redistributeMipsDueToOverSubscriptionDynamic(changedVms);
 
       logOverloadLogger(scaleFactor);
       for (SDNVm vm : this.<SDNVm>getVmList()) {
@@ -315,7 +372,15 @@ public class SDNHost extends Host implements Node {
 
   @Override
   public void addLink(Link l) {
-    this.linkToNextHop.put(l.getOtherNode(this), l);
+    // A later link to the same node replaces the earlier one
+    long other = l.getOtherNode(this).getAddress();
+    int idx = linkIndex.get(other);
+    if (idx != LongIntHashMap.NO_VALUE) {
+      links.set(idx, l);
+      return;
+    }
+    linkIndex.put(other, links.size());
+    links.add(l);
   }
 
   @Override
@@ -390,19 +455,31 @@ public class SDNHost extends Host implements Node {
   }
 
   public MonitoringValues getMonitoringValuesHostBwUtilization() {
-    if (linkToNextHop.size() != 1) {
+    Link uplink = null;
+    int num = 0;
+    for (Link l : links) {
+      if (l.getOtherNode(this) != this) {
+        if (uplink == null)
+          uplink = l;
+        num++;
+      }
+    }
+    if (num != 1) {
       System.err.println(this + ": Multiple links found!!");
     }
 
-    if (linkToNextHop.size() > 0) {
-      return linkToNextHop.values().iterator().next().getMonitoringValuesLinkUtilizationUp();
+    if (uplink != null) {
+      return uplink.getMonitoringValuesLinkUtilizationUp();
     }
     return null;
   }
 
   @Override
   public Link getLinkTo(Node nextHop) {
-    return this.linkToNextHop.get(nextHop);
+    if (nextHop == null)
+      return null;
+    int idx = linkIndex.get(nextHop.getAddress());
+    return (idx == LongIntHashMap.NO_VALUE) ? null : links.get(idx);
   }
 
   public String getName() {
@@ -0,0 +1,154 @@
+/*
+ * Title:        CloudSimSDN
+ * Description:  SDN extension for CloudSim
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2015, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.sdn.physicalcomponents;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+
+import org.cloudbus.cloudsim.sdn.LongIntHashMap;
+
+/**
+ * Adjacency of a physical topology in compressed sparse row form.
+ * Nodes and links (without loopback links) get dense indices; the links of node i are
+ * at positions offsets[i] .. offsets[i+1]-1 of the adjacency arrays, in the order the links were added.
+ *
+ * The graph is immutable and built by {@link PhysicalTopology} once the topology is complete.
+ * It only holds the structure used by routing and path enumeration; the per-link state read by the
+ * monitors and the bandwidth allocation (channels, utilization, free bandwidth) stays in {@link Link}.
+ *
+ * @since CloudSimSDN 3.0
+ */
+public class TopologyGraph {
+	private final Node[] nodes;
+	private final LongIntHashMap nodeIndex = new LongIntHashMap();	// Address -> node index
+
+	private final Link[] links;
+	private final int[] linkHigh;	// Node index of the high order end
+	private final int[] linkLow;	// Node index of the low order end
+
+	private final int[] offsets;
+	private final int[] adjNode;	// Node at the other end
+	private final int[] adjLink;
+
+	TopologyGraph(Collection<Node> nodeCollection, List<Link> linkList) {
+		nodes = nodeCollection.toArray(new Node[nodeCollection.size()]);
+		for(int i=0; i<nodes.length; i++)
+			nodeIndex.put(nodes[i].getAddress(), i);
+
+		int numLinks = linkList.size();
+		links = linkList.toArray(new Link[numLinks]);
+		linkHigh = new int[numLinks];
+		linkLow = new int[numLinks];
+
+		offsets = new int[nodes.length + 1];
+		for(int l=0; l<numLinks; l++) {
+			Link link = links[l];
+			linkHigh[l] = getNodeIndex(link.getHighOrder());
+			linkLow[l] = getNodeIndex(link.getLowOrder());
+			offsets[linkHigh[l] + 1]++;
+			offsets[linkLow[l] + 1]++;
+		}
+		for(int i=0; i<nodes.length; i++)
+			offsets[i+1] += offsets[i];
+
+		// Counting sort of the link ends by node, keeping the link order
+		adjNode = new int[2 * numLinks];
+		adjLink = new int[2 * numLinks];
+		int[] next = new int[nodes.length];
+		System.arraycopy(offsets, 0, next, 0, nodes.length);
+		for(int l=0; l<numLinks; l++) {
+			int e = next[linkHigh[l]]++;
+			adjNode[e] = linkLow[l];
+			adjLink[e] = l;
+			e = next[linkLow[l]]++;
+			adjNode[e] = linkHigh[l];
+			adjLink[e] = l;
+		}
+	}
+
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	public int getLinkCount() {
+		return links.length;
+	}
+
+	/**
+	 * @return index of the node, or -1 if the node is not in the graph
+	 */
+	public int getNodeIndex(Node node) {
+		return nodeIndex.get(node.getAddress());
+	}
+
+	public Node getNode(int index) {
+		return nodes[index];
+	}
+
+	public Link getLink(int index) {
+		return links[index];
+	}
+
+	/**
+	 * Adjacency entries of the node are the positions from getFirstEdge(node) to getEndEdge(node)-1.
+	 */
+	public int getFirstEdge(int node) {
+		return offsets[node];
+	}
+
+	public int getEndEdge(int node) {
+		return offsets[node+1];
+	}
+
+	public int getDegree(int node) {
+		return offsets[node+1] - offsets[node];
+	}
+
+	/**
+	 * @return index of the node at the other end of the adjacency entry
+	 */
+	public int getEdgeNode(int edge) {
+		return adjNode[edge];
+	}
+
+	/**
+	 * @return index of the link of the adjacency entry
+	 */
+	public int getEdgeLink(int edge) {
+		return adjLink[edge];
+	}
+
+	public int getHighOrder(int link) {
+		return linkHigh[link];
+	}
+
+	public int getLowOrder(int link) {
+		return linkLow[link];
+	}
+
+	/**
+	 * Links of the node as a read-only list backed by the adjacency arrays.
+	 */
+	public List<Link> getAdjacentLinks(final int node) {
+		return new AbstractList<Link>() {
+			@Override
+			public Link get(int index) {
+				if(index < 0 || index >= size())
+					throw new IndexOutOfBoundsException("Index: "+index);
+				return links[adjLink[offsets[node] + index]];
+			}
+
+			@Override
+			public int size() {
+				return offsets[node+1] - offsets[node];
+			}
+		};
+	}
+}
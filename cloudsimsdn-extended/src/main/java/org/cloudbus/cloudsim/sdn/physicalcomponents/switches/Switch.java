@@ -7,11 +7,12 @@
  */
 package org.cloudbus.cloudsim.sdn.physicalcomponents.switches;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.sdn.LogWriter;
+import org.cloudbus.cloudsim.sdn.LongIntHashMap;
 import org.cloudbus.cloudsim.sdn.monitor.power.PowerUtilizationEnergyModelSwitchActivePort;
 import org.cloudbus.cloudsim.sdn.monitor.power.PowerUtilizationMonitor;
 import org.cloudbus.cloudsim.sdn.nos.NetworkOperatingSystem;
@@ -41,7 +42,8 @@ public class Switch implements Node {
   protected long iops;
   protected int rank = -1;
 
-  private HashMap<Node, Link> linkToNextHop = new HashMap<Node, Link>();
+  private ArrayList<Link> links = new ArrayList<Link>(4); // Adjacent links including the loopback, one per port
+  private LongIntHashMap linkIndex = new LongIntHashMap(); // Address of the other node -> position in links
 
   protected ForwardingRule forwardingTable;
   protected RoutingTable routingTable;
@@ -58,7 +60,15 @@ public class Switch implements Node {
   }
 
   public void addLink(Link l) {
-    this.linkToNextHop.put(l.getOtherNode(this), l);
+    // A later link to the same node replaces the earlier one
+    long other = l.getOtherNode(this).getAddress();
+    int idx = linkIndex.get(other);
+    if (idx != LongIntHashMap.NO_VALUE) {
+      links.set(idx, l);
+      return;
+    }
+    linkIndex.put(other, links.size());
+    links.add(l);
   }
 
   /******* Routeable interface implementation methods ******/
@@ -180,7 +190,7 @@ public class Switch implements Node {
 
   private int getCurrentActivePorts() {
     int num = 0;
-    for (Link l : linkToNextHop.values()) {
+    for (Link l : links) {
       if (l.isActive())
         num++;
     }
@@ -189,7 +199,10 @@ public class Switch implements Node {
 
   @Override
   public Link getLinkTo(Node nextHop) {
-    return this.linkToNextHop.get(nextHop);
+    if (nextHop == null)
+      return null;
+    int idx = linkIndex.get(nextHop.getAddress());
+    return (idx == LongIntHashMap.NO_VALUE) ? null : links.get(idx);
   }
 
   public void setPowerModel(double pStatic, double pPort) {
@@ -53,6 +53,9 @@ public class VmAllocationPolicyEx extends VmAllocationPolicy implements PowerUti
   private List<Long> freeMips;
   private List<Long> freeBw;
 
+  private Map<Host, Integer> hostIdxMap = new HashMap<Host, Integer>();
+  private boolean isBulkAllocation = false;
+
   /**
    * Creates the new VmAllocationPolicySimple object.
    * 
@@ -146,6 +149,28 @@ public class VmAllocationPolicyEx extends VmAllocationPolicy implements PowerUti
     return allocateHostForVm(vm, hostSelectionPolicy.selectHostForVm((SDNVm) vm, this.<SDNHost>getHostList()));
   }
 
+  /**
+   * Allocates hosts for VMs created at the same time, in the given order.
+   * The number of hosts used is logged once after all VMs are placed.
+   * 
+   * @param vms VMs to place
+   * @return VMs placed successfully
+   */
+  public List<SDNVm> allocateHostsForVms(List<SDNVm> vms) {
+    List<SDNVm> created = new ArrayList<SDNVm>(vms.size());
+    isBulkAllocation = true;
+    try {
+      for (SDNVm vm : vms) {
+        if (allocateHostForVm(vm))
+          created.add(vm);
+      }
+    } finally {
+      isBulkAllocation = false;
+    }
+    logMaxNumHostsUsed();
+    return created;
+  }
+
   protected boolean allocateHostForVm(Vm vm, List<Host> candidateHosts) {
     if (getVmTable().containsKey(vm.getUid())) { // if this vm was not created
       return false;
@@ -223,6 +248,9 @@ public class VmAllocationPolicyEx extends VmAllocationPolicy implements PowerUti
   protected int maxNumHostsUsed = 0;
 
   public void logMaxNumHostsUsed() {
+    if (isBulkAllocation)
+      return; // Logged once after the batch
+
     // Get how many are used
     int numHostsUsed = 0;
     for (int freePes : getFreePes()) {
@@ -370,8 +398,14 @@ public class VmAllocationPolicyEx extends VmAllocationPolicy implements PowerUti
   }
 
   protected int findHostIdx(Host h) {
+    Integer idx = hostIdxMap.get(h);
+    if (idx != null && idx < getHostList().size() && getHostList().get(idx).equals(h))
+      return idx;
+
+    // Not indexed yet, or the host list is changed
     for (int i = 0; i < getHostList().size(); i++) {
       if (getHostList().get(i).equals(h)) {
+        hostIdxMap.put(h, i);
         return i;
       }
     }
@@ -517,7 +551,7 @@ public class VmAllocationPolicyEx extends VmAllocationPolicy implements PowerUti
 
   protected void removeResource(Host host, Vm vm) {
     if (host != null) {
-      int idx = getHostList().indexOf(host);
+      int idx = findHostIdx(host);
 
       Integer pes = getUsedPes().remove(vm.getUid());
       getFreePes().set(idx, getFreePes().get(idx) + pes);
@@ -16,6 +16,7 @@ import org.cloudbus.cloudsim.sdn.virtualcomponents.SDNVm;
 public class VmAllocationPolicyFromFile extends VmAllocationPolicyEx {
   private String placementsFile;
   private Map<String, String> vmToHostMapping;
+  private Map<String, Host> hostsByName = null;
 
   public VmAllocationPolicyFromFile(List<? extends Host> hostList, String placementsFile) {
     super(hostList, null, null);
@@ -57,18 +58,15 @@ public class VmAllocationPolicyFromFile extends VmAllocationPolicyEx {
     if (vmToHostMapping.containsKey(vmName)) {
       String targetHostId = vmToHostMapping.get(vmName);
 
-      for (Host host : getHostList()) {
-        SDNHost sdnHost = (SDNHost) host;
-
-        if (sdnHost.getName().equals(targetHostId)) {
-          if (allocateHostForVm(vm, host)) {
-            System.out.println("VM " + vmName + " allocated to Host " + targetHostId);
-            return true;
-          } else {
-            System.err
-                .println("Failed to allocate VM " + vmName + " to Host " + targetHostId + " (insufficient resources?)");
-            return false;
-          }
+      Host host = getHostsByName().get(targetHostId);
+      if (host != null) {
+        if (allocateHostForVm(vm, host)) {
+          System.out.println("VM " + vmName + " allocated to Host " + targetHostId);
+          return true;
+        } else {
+          System.err
+              .println("Failed to allocate VM " + vmName + " to Host " + targetHostId + " (insufficient resources?)");
+          return false;
         }
       }
       System.err.println("Host " + targetHostId + " not found for VM " + vmName);
@@ -79,6 +77,17 @@ public class VmAllocationPolicyFromFile extends VmAllocationPolicyEx {
     }
   }
 
+  private Map<String, Host> getHostsByName() {
+    if (hostsByName == null) {
+      hostsByName = new HashMap<>();
+      for (Host host : getHostList()) {
+        // The first host wins if names are duplicated, as in the search by name
+        hostsByName.putIfAbsent(((SDNHost) host).getName(), host);
+      }
+    }
+    return hostsByName;
+  }
+
   public String getPlacementsFile() {
     return placementsFile;
   }
@@ -19,6 +19,7 @@ import org.cloudbus.cloudsim.CloudletScheduler;
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.sdn.CloudletSchedulerSpaceSharedMonitor;
+import org.cloudbus.cloudsim.sdn.CloudletSchedulerVirtualTimeMonitor;
 import org.cloudbus.cloudsim.sdn.Configuration;
 import org.cloudbus.cloudsim.sdn.nos.NetworkOperatingSystem;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.SDNHost;
@@ -299,7 +300,9 @@ public class ServiceFunctionAutoScaler {
 	
 	private ServiceFunction duplicateSF(ServiceFunction orgSf, Set<ServiceFunctionChainPolicy> overloadedPolicy) {
 		// Create an identical VM for scale out.
-		CloudletScheduler clSch = new CloudletSchedulerSpaceSharedMonitor(Configuration.TIME_OUT);
+		CloudletScheduler clSch = Configuration.CLOUDLET_SCHEDULER_VIRTUAL_TIME ?
+				new CloudletSchedulerVirtualTimeMonitor((long) orgSf.getMips(), Configuration.TIME_OUT) :
+				new CloudletSchedulerSpaceSharedMonitor(Configuration.TIME_OUT);
 		ServiceFunction newSF = new ServiceFunction(
 				SDNVm.getUniqueVmId(),
 				orgSf.getUserId(), orgSf.getMips(), orgSf.getNumberOfPes(), orgSf.getRam(),
@@ -19,6 +19,8 @@ import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.UtilizationModel;
 import org.cloudbus.cloudsim.UtilizationModelFull;
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.sdn.Configuration;
+import org.cloudbus.cloudsim.sdn.LongHashMap;
 import org.cloudbus.cloudsim.sdn.Packet;
 import org.cloudbus.cloudsim.sdn.SDNBroker;
 import org.cloudbus.cloudsim.sdn.nos.NetworkOperatingSystem;
@@ -44,9 +46,9 @@ public class ServiceFunctionForwarder {
 	protected NetworkOperatingSystem nos;
 	
 	/** SFC policies used by the forwarder. Every packet will be investigated if any policy in this table matches. 
-	 *  Key (String): tuple of (src,dst,flowid) in String data
+	 *  Key (long): tuple of (src,dst,flowid) packed by ChannelManager.getChannelKey()
 	 *  Value (SFCPolicy): SFCPolicy object corresponds to the key. */
-	protected HashMap<String, ServiceFunctionChainPolicy> policyTable = new HashMap<String, ServiceFunctionChainPolicy>();	// getKey(srcVM, dstVM, flowID) -> ServiceFunctionChainPolicy
+	protected LongHashMap<ServiceFunctionChainPolicy> policyTable = new LongHashMap<ServiceFunctionChainPolicy>();	// getKey(srcVM, dstVM, flowID) -> ServiceFunctionChainPolicy
 	
 	/** A pool of SFs used for auto-scaling. Once auto-scale policy creates a duplicated SF for the original SF, it will be added here. 
 	 *  Key: original SF
@@ -72,9 +74,9 @@ public class ServiceFunctionForwarder {
 		int flowId = pkt.getFlowId();
 		
 		// Encapsulate a packet, if it needs to go through SFC.
-		if(policyTable.containsKey(ChannelManager.getChannelKey(src,dst,flowId))) {
+		ServiceFunctionChainPolicy policy = policyTable.get(ChannelManager.getChannelKey(src,dst,flowId));
+		if(policy != null) {
 			// SFC Policy should be enforced!
-			ServiceFunctionChainPolicy policy = policyTable.get(ChannelManager.getChannelKey(src,dst,flowId));
 			pkt = encapsulatePacket(orgPkt, policy);
 		}
 		return pkt;
@@ -178,6 +180,9 @@ public class ServiceFunctionForwarder {
 	}
 
 	private Processing createRequestActivityProcessing(int cloudletId, int vmId, int userId, long workloadSize) {
+		if(Configuration.ANALYTIC_COMPUTE)
+			return new Processing(cloudletId, vmId, userId, workloadSize);
+		
 		int peNum=1;
 		long fileSize = 300;
 		long outputSize = 300;
@@ -13,6 +13,7 @@ import java.util.List;
 import org.cloudbus.cloudsim.sdn.Configuration;
 import org.cloudbus.cloudsim.sdn.PacketScheduler;
 import org.cloudbus.cloudsim.sdn.PacketSchedulerTimeShared;
+import org.cloudbus.cloudsim.sdn.PacketSchedulerVirtualTime;
 import org.cloudbus.cloudsim.sdn.monitor.MonitoringValues;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.Link;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.Node;
@@ -50,7 +51,17 @@ public class Channel {
 //	private SDNVm dstVm;
 	
 	//	PacketScheduler packetScheduler = new PacketSchedulerSpaceShared(this);
-	PacketScheduler packetScheduler = new PacketSchedulerTimeShared(this);
+	PacketScheduler packetScheduler = Configuration.PACKET_SCHEDULER_VIRTUAL_TIME ?
+			new PacketSchedulerVirtualTime(this, true) : new PacketSchedulerTimeShared(this);
+	
+	// Position of this channel in ChannelManager's completion queue (-1: not queued)
+	private int completionQueueIndex = -1;
+	
+	// true while this channel is registered in the links along its route
+	private boolean isOnLinks = false;
+	
+	// ID of the path (PathCache) of the route, -1 if unknown
+	private int pathId = -1;
 	
 	public Channel(int chId, int srcId, int dstId, List<Node> nodes, List<Link> links, double bandwidth, SDNVm srcVm, SDNVm dstVm) {
 		this.chId = chId;
@@ -63,7 +74,7 @@ public class Channel {
 		
 		this.srcVm = srcVm;
 //		this.dstVm = dstVm;
-		packetScheduler.setTimeOut(Configuration.TIME_OUT); // If the packet is not successfull in 3 seconds, it will be discarded.
+		// Timeout (Configuration.TIME_OUT) is tracked by ChannelManager, which calls timeOutTransmission() when expired.
 	}
 	
 	public void initialize() {
@@ -80,6 +91,7 @@ public class Channel {
 		}
 		
 		nodes.get(nodes.size()-1).updateNetworkUtilization();
+		isOnLinks = true;
 	}
 	
 	public void terminate() {
@@ -93,13 +105,26 @@ public class Channel {
 			from.updateNetworkUtilization();
 		}
 		nodes.get(nodes.size()-1).updateNetworkUtilization();
+		isOnLinks = false;
+	}
+	
+	private void updateLinksRequestedBandwidth(double oldRequestedBandwidth) {
+		if(!isOnLinks)
+			return;
+		for(int i=0; i<nodes.size()-1; i++) {
+			Node from = nodes.get(i);
+			Link link = links.get(i);
+			link.updateRequestedBandwidth(from, this, oldRequestedBandwidth);
+		}
 	}
 	
-	private void updateLinks() {
+	private void updateLinksAllocatedBandwidth(double oldAllocatedBandwidth) {
+		if(!isOnLinks)
+			return;
 		for(int i=0; i<nodes.size()-1; i++) {
 			Node from = nodes.get(i);
 			Link link = links.get(i);
-			link.updateChannel(from, this);
+			link.updateAllocatedBandwidth(from, this, oldAllocatedBandwidth);
 		}
 	}
 	
@@ -215,6 +240,7 @@ public class Channel {
 			return false; //nothing changed
 		
 		boolean isChanged = this.updatePacketProcessing();
+		double oldBandwidth = this.allocatedBandwidth;
 		this.allocatedBandwidth = newBandwidth;
 		
 		if(this.allocatedBandwidth == Double.NEGATIVE_INFINITY || this.allocatedBandwidth == Double.POSITIVE_INFINITY)
@@ -227,6 +253,7 @@ public class Channel {
 			throw new RuntimeException("Allocated bandwidth negative!!"+this);
 		}
 		
+		updateLinksAllocatedBandwidth(oldBandwidth);
 		return isChanged;
 	}
 	
@@ -371,6 +398,30 @@ public class Channel {
 				+"): BW:"+allocatedBandwidth+", Transmissions:"+this.getActiveTransmissionNum();
 	}
 
+	public int getPathId() {
+		return pathId;
+	}
+
+	public void setPathId(int pathId) {
+		this.pathId = pathId;
+	}
+
+	public List<Link> getLinks() {
+		return links;
+	}
+
+	public List<Node> getNodes() {
+		return nodes;
+	}
+
+	public boolean isOnLinks() {
+		return isOnLinks;
+	}
+
+	public boolean isAllocateMoreAvailableBw() {
+		return allocateMoreAvailableBw;
+	}
+
 	public Node getLastNode() {
 		Node node = this.nodes.get(this.nodes.size()-1);
 		return node;
@@ -389,8 +440,9 @@ public class Channel {
 	}
 	
 	public void updateRequestedBandwidth(double requestedBandwidth) {
+		double oldRequestedBandwidth = this.requestedBandwidth;
 		this.requestedBandwidth = requestedBandwidth;
-		updateLinks();
+		updateLinksRequestedBandwidth(oldRequestedBandwidth);
 	}
 	
 	// For monitor
@@ -447,6 +499,10 @@ public class Channel {
 		packetScheduler.removeTransmission(transmission);
 	}
 
+	public boolean timeOutTransmission(Transmission transmission){
+		return packetScheduler.timeOutTransmission(transmission);
+	}
+
 	public List<Transmission> getArrivedPackets(){
 		List<Transmission> completed = packetScheduler.getCompletedTransmission();
 		packetScheduler.resetCompletedTransmission();
@@ -467,9 +523,25 @@ public class Channel {
 		long processedBytes = packetScheduler.updatePacketProcessing();
 		this.increaseProcessedBytes(processedBytes); // for monitoring
 		
+		return hasFinishedTransmissions();
+	}
+	
+	/**
+	 * @return true if completed or timed-out transmissions are waiting to be collected
+	 * by {@link #getArrivedPackets()} or {@link #getFailedPackets()}.
+	 */
+	public boolean hasFinishedTransmissions() {
 		if(packetScheduler.getCompletedTransmission().isEmpty()
 				&& packetScheduler.getTimedOutTransmission().isEmpty())
 			return false;	// Nothing changed
 		return true;
 	}
+
+	public int getCompletionQueueIndex() {
+		return completionQueueIndex;
+	}
+
+	public void setCompletionQueueIndex(int completionQueueIndex) {
+		this.completionQueueIndex = completionQueueIndex;
+	}
 }
@@ -8,23 +8,28 @@
 
 package org.cloudbus.cloudsim.sdn.virtualcomponents;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.sdn.Configuration;
+import org.cloudbus.cloudsim.sdn.LongIntHashMap;
+import org.cloudbus.cloudsim.sdn.nos.ChannelTable;
 import org.cloudbus.cloudsim.sdn.nos.NetworkOperatingSystem;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.Node;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.SDNHost;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.switches.Switch;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
-
 
 /**
  * ForwardingRule class is to represent a forwarding table in each switch.
  * This is for VM routing, not host routing. Addresses used here are the addresses of VM.
+ * 
+ * Rules are kept in a primitive hash map from the packed (src, dest, flow) key to the index of the next hop,
+ * so a switch holds no object per rule. If Configuration.FORWARDING_RULES_AGGREGATE_BY_DESTINATION is set,
+ * flows to the same destination VM share one rule counting the flows, and only a flow taking another hop
+ * keeps its own rule, which overrides the destination rule.
  *  
  * @author Jungmin Son
  * @author Rodrigo N. Calheiros
@@ -32,72 +37,132 @@ import com.google.common.collect.Table;
  */
 public class ForwardingRule {
 	
-	Table<Integer, Integer, Map<Integer,Node>> table;
+	private final boolean aggregateByDestination;
+	
+	private LongIntHashMap table = new LongIntHashMap();	// ChannelTable.getKey(src, dest, flowId) -> next hop index
+	private LongIntHashMap destTable = null;	// dest -> next hop index (aggregate rules)
+	private LongIntHashMap destFlowCount = null;	// dest -> number of flows using the aggregate rule
+	private LongIntHashMap countedFlows = null;	// Keys of the flows counted in destFlowCount
+	
+	private List<Node> nextHops = new ArrayList<Node>();	// Next hop index -> Node. A few neighbors per node.
 
 	public ForwardingRule(){
-		this.table = HashBasedTable.create();
+		this.aggregateByDestination = Configuration.FORWARDING_RULES_AGGREGATE_BY_DESTINATION;
+		if(aggregateByDestination) {
+			destTable = new LongIntHashMap();
+			destFlowCount = new LongIntHashMap();
+			countedFlows = new LongIntHashMap();
+		}
 	}
 	
 	public void clear(){
 		table.clear();
+		if(aggregateByDestination) {
+			destTable.clear();
+			destFlowCount.clear();
+			countedFlows.clear();
+		}
+	}
+	
+	private int getNextHopIndex(Node to) {
+		int idx = nextHops.indexOf(to);
+		if(idx < 0) {
+			idx = nextHops.size();
+			nextHops.add(to);
+		}
+		return idx;
 	}
 	
 	public void addRule(int src, int dest, int flowId, Node to){
-		Map<Integer, Node> map = table.get(src, dest);
-		if(map == null)
-			map = new HashMap<Integer, Node>();
-		map.put(flowId, to);
-		table.put(src, dest, map);
+		int hop = getNextHopIndex(to);
+		long key = ChannelTable.getKey(src, dest, flowId);
+		if(!aggregateByDestination) {
+			table.put(key, hop);
+			return;
+		}
+		
+		int destHop = destTable.get(dest);
+		if(destHop == LongIntHashMap.NO_VALUE) {
+			destTable.put(dest, hop);
+			destFlowCount.put(dest, 1);
+			countedFlows.put(key, 1);
+			table.remove(key);
+		}
+		else if(destHop == hop) {
+			table.remove(key);
+			if(countedFlows.put(key, 1) == LongIntHashMap.NO_VALUE)
+				destFlowCount.put(dest, destFlowCount.get(dest) + 1);
+		}
+		else {
+			table.put(key, hop);	// Overrides the destination rule
+			if(countedFlows.remove(key) != LongIntHashMap.NO_VALUE)
+				uncountFlow(dest);
+		}
 	}
 	
 	public void removeRule(int src, int dest, int flowId){
-		Map<Integer, Node> map = table.get(src, dest);
-		
-		if(map != null) {
-			map.remove(flowId);
-			if(map.isEmpty())
-				table.remove(src, dest);
-			else
-				table.put(src, dest, map);
+		long key = ChannelTable.getKey(src, dest, flowId);
+		table.remove(key);
+		if(aggregateByDestination && countedFlows.remove(key) != LongIntHashMap.NO_VALUE)
+			uncountFlow(dest);
+	}
+	
+	// Removes a flow from the destination rule, and the rule itself with the last flow
+	private void uncountFlow(int dest) {
+		int count = destFlowCount.get(dest);
+		if(count <= 1) {
+			destTable.remove(dest);
+			destFlowCount.remove(dest);
+		}
+		else {
+			destFlowCount.put(dest, count - 1);
 		}
 	}
 
 	public Node getRoute(int src, int dest, int flowId) {
-		Map<Integer, Node> map = table.get(src, dest);
-		if(map==null)
+		int hop = table.get(ChannelTable.getKey(src, dest, flowId));
+		if(hop == LongIntHashMap.NO_VALUE && aggregateByDestination)
+			hop = destTable.get(dest);
+		if(hop == LongIntHashMap.NO_VALUE)
 			return null;
 		
-		return map.get(flowId);
+		return nextHops.get(hop);
+	}
+	
+	/**
+	 * @return number of rules held, aggregate rules included
+	 */
+	public int size() {
+		return table.size() + (aggregateByDestination ? destTable.size() : 0);
 	}
 	
 	public void printForwardingTable(String thisNode) {
-		for(Integer rowK:table.rowKeySet()) {
-			Map<Integer, Map<Integer,Node>> row = table.row(rowK);
-			for(Integer colK: row.keySet()) {
-				Map<Integer, Node> nodes = row.get(colK);
-				
-				for(Integer flowId:nodes.keySet()) {
-					Node node = nodes.get(flowId);
-					if(node instanceof SDNHost) {
-						Log.printLine(CloudSim.clock() + ": Forwarding table of " + thisNode + ": "+
-								NetworkOperatingSystem.getVmName(rowK) + "|"+rowK+"->" + 
-								NetworkOperatingSystem.getVmName(colK) + "|"+colK+"->"+"(flow:"+flowId+")==> " + 
-								node.toString());
-					}
-					else if(node instanceof Switch) {
-						Log.printLine(CloudSim.clock() + ": Forwarding table of " + thisNode + ": "+
-								NetworkOperatingSystem.getVmName(rowK) + "|"+rowK+"->" +  
-								NetworkOperatingSystem.getVmName(colK) + "|"+colK+"->"+"(flow:"+flowId+")==> " + 
-								((Switch) node).getName());
-					}
-					else {
-						Log.printLine(CloudSim.clock() + ": Forwarding table of " + thisNode + ": "+
-								NetworkOperatingSystem.getVmName(rowK) + "|"+rowK+"->" +  
-								NetworkOperatingSystem.getVmName(colK) + "|"+colK+"->"+"(flow:"+flowId+")==> " + 
-								node.getAddress());
-					}
-				}
+		for(long key:table.keys()) {
+			int rowK = ChannelTable.getSrc(key);
+			int colK = ChannelTable.getDst(key);
+			int flowId = ChannelTable.getFlowId(key);
+			Node node = nextHops.get(table.get(key));
+			Log.printLine(CloudSim.clock() + ": Forwarding table of " + thisNode + ": "+
+					NetworkOperatingSystem.getVmName(rowK) + "|"+rowK+"->" + 
+					NetworkOperatingSystem.getVmName(colK) + "|"+colK+"->"+"(flow:"+flowId+")==> " + 
+					getNodeName(node));
+		}
+		if(aggregateByDestination) {
+			for(long colK:destTable.keys()) {
+				Node node = nextHops.get(destTable.get(colK));
+				Log.printLine(CloudSim.clock() + ": Forwarding table of " + thisNode + ": *->" +  
+						NetworkOperatingSystem.getVmName((int) colK) + "|"+colK+"->"+"(flows:"+destFlowCount.get(colK)+")==> " + 
+						getNodeName(node));
 			}
 		}
 	}
+	
+	private static String getNodeName(Node node) {
+		if(node instanceof SDNHost)
+			return node.toString();
+		else if(node instanceof Switch)
+			return ((Switch) node).getName();
+		else
+			return String.valueOf(node.getAddress());
+	}
 }
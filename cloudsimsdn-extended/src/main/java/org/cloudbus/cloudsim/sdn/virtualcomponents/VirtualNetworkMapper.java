@@ -5,17 +5,27 @@ import java.util.List;
 
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.sdn.LongHashMap;
+import org.cloudbus.cloudsim.sdn.nos.ChannelTable;
 import org.cloudbus.cloudsim.sdn.nos.NetworkOperatingSystem;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.Link;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.Node;
+import org.cloudbus.cloudsim.sdn.physicalcomponents.PathCache;
 import org.cloudbus.cloudsim.sdn.physicalcomponents.SDNHost;
 import org.cloudbus.cloudsim.sdn.policies.selectlink.LinkSelectionPolicy;
 
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+
 public class VirtualNetworkMapper {
 	
 	protected NetworkOperatingSystem nos;
 	protected LinkSelectionPolicy linkSelector;
 	
+	// Cached path of each flow: ChannelTable.getKey(src, dst, flowId) -> Path. Dropped when the forwarding rules of the flow change.
+	private LongHashMap<PathCache.Path> flowPaths = new LongHashMap<PathCache.Path>();
+	private Multimap<Integer, Long> flowPathKeysByVm = LinkedHashMultimap.create();	// VM ID (src or dst) -> keys of flowPaths
+	
 	public VirtualNetworkMapper(NetworkOperatingSystem nos) {
 		this.nos = nos;
 	}
@@ -27,6 +37,7 @@ public class VirtualNetworkMapper {
 	public boolean buildForwardingTable(int srcVm, int dstVm, int flowId) {
 		SDNHost srchost = (SDNHost)nos.findHost(srcVm);
 		SDNHost dsthost = (SDNHost)nos.findHost(dstVm);
+		flowPaths.remove(ChannelTable.getKey(srcVm, dstVm, flowId));
 		if(srchost == null || dsthost == null) {
 			//System.err.println(CloudSim.clock() + ": " + getName() + ": Cannot find src VM ("+srcVm+":"+srchost+") or dst VM ("+dstVm+":"+dsthost+")");
 			return false;
@@ -95,6 +106,7 @@ public class VirtualNetworkMapper {
 			// Create a new route
 			//node.removeVMRoute(srcVm, dstVm, flowId);
 			node.addVMRoute(srcVm, dstVm, flowId, nextHop);
+			flowPaths.remove(ChannelTable.getKey(srcVm, dstVm, flowId));
 			//Log.printLine(CloudSim.clock() + ": " + getName() + ": Updating VM route for flow:"+srcVm+"->"+dstVm+"("+flowId+") From="+node+", Old="+oldNextHop+", New="+nextHop);
 			
 			updateDynamicForwardingTableRec(nextHop, srcVm, dstVm, flowId, true);
@@ -122,20 +134,62 @@ public class VirtualNetworkMapper {
 	 */
 	public void buildNodesLinks(int src, int dst, int flowId, Node srcNode,
 			List<Node> nodes, List<Link> links) {
+		PathCache.Path path = getPath(src, dst, flowId, srcNode);
+		if(path == null) {
+			System.err.println("buildNodesLinks() Cannot find dest!");
+			return;	
+		}
+		nodes.addAll(path.getNodes());
+		links.addAll(path.getLinks());
+	}
+	
+	/**
+	 * Gets the cached path that a channel will pass through, following the forwarding rules of the flow.
+	 * The rules are walked only on the first query after they change.
+	 * 
+	 * @return the path, or null if the flow has no route from srcNode
+	 */
+	public PathCache.Path getPath(int src, int dst, int flowId, Node srcNode) {
+		long key = ChannelTable.getKey(src, dst, flowId);
+		PathCache.Path path = flowPaths.get(key);
+		if(path != null && path.isValid() && path.getSource().equals(srcNode))
+			return path;
+		
+		List<Node> nodes = new ArrayList<Node>();
+		List<Link> links = new ArrayList<Link>();
+		if(!walkVMRoute(src, dst, flowId, srcNode, nodes, links))
+			return null;
+		
+		path = nos.getPhysicalTopology().getPathCache().findPath(nodes, links);
+		flowPaths.put(key, path);
+		flowPathKeysByVm.put(src, key);
+		flowPathKeysByVm.put(dst, key);
+		return path;
+	}
+	
+	/**
+	 * Drops the cached paths of the flows from or to the VM. Called when the VM is destroyed.
+	 */
+	public void removeVmPaths(int vmId) {
+		for(Long key:flowPathKeysByVm.removeAll(vmId))
+			flowPaths.remove(key);
+	}
+	
+	private boolean walkVMRoute(int src, int dst, int flowId, Node srcNode,
+			List<Node> nodes, List<Link> links) {
 		
 		// Build the list of nodes and links that this channel passes through
 		Node origin = srcNode;
 		Node dest = origin.getVMRoute(src, dst, flowId);
 		
-		if(dest==null) {
-			System.err.println("buildNodesLinks() Cannot find dest!");
-			return;	
-		}
+		if(dest==null)
+			return false;
 	
 		nodes.add(origin);
 	
-		while(dest != null) {
-			Link link = origin.getLinkTo(dest);
+		// The route must reach a host; a missing hop on the way is an error as in the channel creation
+		while(true) {
+			Link link = (dest == null) ? null : origin.getLinkTo(dest);
 			if(link == null)
 				throw new IllegalArgumentException("Link is NULL for srcNode:"+origin+" -> dstNode:"+dest);
 			
@@ -143,7 +197,7 @@ public class VirtualNetworkMapper {
 			nodes.add(dest);
 			
 			if(dest instanceof SDNHost)
-				break;
+				return true;
 			
 			origin = dest;
 			dest = origin.getVMRoute(src, dst, flowId);
@@ -161,6 +215,7 @@ public class VirtualNetworkMapper {
 			//System.err.println("Removing routes for: "+node + "("+arc+")");
 			node.removeVMRoute(srcVmId, dstVmId, flowId);
 		}
+		flowPaths.remove(ChannelTable.getKey(srcVmId, dstVmId, flowId));
 		
 		// Build a forwarding table for the new route.
 		if(buildForwardingTable(srcVmId, dstVmId, flowId) == false) {
@@ -8,6 +8,8 @@
 package org.cloudbus.cloudsim.sdn.workload;
 
 import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.UtilizationModel;
+import org.cloudbus.cloudsim.UtilizationModelFull;
 import org.cloudbus.cloudsim.sdn.Configuration;
 
 /**
@@ -26,14 +28,51 @@ public class Processing implements Activity {
 	double maxMipsForCloudlet;
 	public long cloudletTotalLength;
 
+	// Workload of a processing created without a Cloudlet (Configuration.ANALYTIC_COMPUTE)
+	private int cloudletId;
+	private int vmId;
+	private int userId;
+	private long length;
+	private boolean cloudletPending = false;
+
 	public Processing(Cloudlet cl){
 		this.cl=cl;
 	}
 	
+	/**
+	 * Creates a processing without a Cloudlet. The Cloudlet is created only if {@link #getCloudlet()} is called.
+	 */
+	public Processing(int cloudletId, int vmId, int userId, long length){
+		this.cloudletId = cloudletId;
+		this.vmId = vmId;
+		this.userId = userId;
+		this.length = length;
+		this.cloudletPending = true;
+	}
+	
 	public Cloudlet getCloudlet(){
+		if(cloudletPending) {
+			UtilizationModel utilizationModel = new UtilizationModelFull();
+			cl = new Cloudlet(cloudletId, length, 1, 300, 300, utilizationModel, utilizationModel, utilizationModel);
+			cl.setUserId(userId);
+			cl.setVmId(vmId);
+			cloudletPending = false;
+		}
 		return cl;
 	}
 	
+	public int getVmId() {
+		return (cl != null) ? cl.getVmId() : vmId;
+	}
+	
+	public int getUserId() {
+		return (cl != null) ? cl.getUserId() : userId;
+	}
+	
+	public long getTotalLength() {
+		return (cl != null) ? cl.getCloudletTotalLength() : length;
+	}
+	
 	public void setVmMipsPerPE(double mips) {
 		vmMipsPerPE = mips;
 		
@@ -42,8 +81,9 @@ public class Processing implements Activity {
 	
 	public void clearCloudlet() {
 		maxMipsForCloudlet = getMaxMipsForCloudlet();
-		cloudletTotalLength = cl.getCloudletTotalLength();
+		cloudletTotalLength = getTotalLength();
 		cl = null;
+		cloudletPending = false;
 	}
 	
 	private double getMaxMipsForCloudlet() {